@@ -0,0 +1,661 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Translates an Intcode program into Java source ahead of time, compiles it with the system Java compiler and caches
+ * the class on disk, so later runs load it instead of translating the program again.
+ *
+ * The blocks of a {@link ProgramAnalysis} are grouped by the procedure they belong to, as found by following relative
+ * base frames from address 0, and every procedure becomes a static method with a {@code switch} over the entry points
+ * of its blocks. Control stays in a method while it jumps between blocks of the same procedure. Calls, returns and
+ * jumps elsewhere go back to a dispatching {@code run} method with the next address, since an Intcode return can land
+ * on any return site. Procedures of more than {@value #MAX_METHOD_INSTRUCTIONS} instructions are split over several
+ * methods to stay below the size the JIT compiles.
+ *
+ * Operands in cells the program never writes are compiled in as constants; all other cells are read from memory at
+ * run time. So are the cells a caller declares patchable, which lets a program be patched before it runs, as the
+ * Day 2 noun and verb search in the benchmark does, with one class for every patch. Where the analysis gives up and
+ * reports every cell as possibly written, code cells are still compiled in unless a position-mode write names them,
+ * and opcodes even then if the analysis found the rewrite harmless. With a bounded relative base, code cells at or
+ * above the lowest relative write are read at run time too. With an unbounded one, as in Day 9, every code cell is
+ * compiled in and correctness rests entirely on the deoptimization guard: a write into a cell compiled as a constant
+ * returns from generated code right after the write, and the computer runs on in the interpreter for good.
+ * Instructions whose opcode may change or that use invalid modes are always left to the interpreter.
+ *
+ * Classes are named after a hash of the cells, the patchable cells and the generator version, and are kept in the
+ * cache directory next to their source and a manifest with the SHA-256 digests of both. The cache directory has to be
+ * owned by the current user and closed to everybody else; it is created that way if it does not exist. A cached class
+ * is only loaded if the source generated for the program and the class bytes both match the manifest, and is compiled
+ * again otherwise. Loaded classes are shared by all computers of the process.
+ *
+ * Without a system Java compiler, or with a cache directory that fails the checks, programs run in the interpreter and
+ * {@link #report()} says why.
+ */
+class AotCompiler {
+    private static final int VERSION = 1;
+    private static final int MAX_METHOD_INSTRUCTIONS = 96;
+    private static final String STOP = "0xFFFFFFFFL";
+    private static final Map<String, BytecodeCompiler.Program> LOADED = new ConcurrentHashMap<>();
+
+    private final Path cacheDirectory;
+    private int compiled = 0;
+    private int cached = 0;
+    private int shared = 0;
+    private long nanos = 0;
+    private String unavailable = null;
+
+    AotCompiler() {
+        this(defaultCacheDirectory());
+    }
+
+    AotCompiler(final Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * The directory in system property {@code intcode.aot.cache}, or {@code .cache/intcode-aot} in the user's home.
+     */
+    static Path defaultCacheDirectory() {
+        final String configured = System.getProperty("intcode.aot.cache");
+        return configured != null
+            ? Path.of(configured)
+            : Path.of(System.getProperty("user.home"), ".cache", "intcode-aot");
+    }
+
+    /**
+     * Returns the compiled program of {@code image}, reading the cells at the {@code patchable} addresses from memory.
+     * Runs the Java compiler only if the class is neither loaded nor verified in the cache directory. If it cannot be
+     * compiled, the result runs the program in the interpreter.
+     */
+    synchronized Compiled compile(final ProgramImage image, final int... patchable) {
+        final long start = System.nanoTime();
+        final long[] cells = image.cells();
+        final ProgramAnalysis analysis = ProgramAnalysis.analyze(cells);
+        final boolean[] constant = constants(cells, analysis);
+        for (final int cell : patchable) {
+            if (cell >= 0 && cell < cells.length) {
+                constant[cell] = false;
+            }
+        }
+
+        final String name = String.format("IntcodeAot_%016x", key(cells, patchable));
+        BytecodeCompiler.Program program = LOADED.get(name);
+        if (program != null) {
+            shared++;
+        } else {
+            final String source = generate(name, cells, constant, analysis);
+            try {
+                ensurePrivate();
+                final byte[] cachedClass = verified(name, source);
+                program = define(cachedClass != null ? cachedClass : javac(name, source));
+                if (cachedClass != null) {
+                    cached++;
+                } else {
+                    compiled++;
+                }
+                LOADED.put(name, program);
+            } catch (final IOException | UnsupportedOperationException e) {
+                // Covers javac errors and classes that fail to load as well, which leave the program interpreted
+                unavailable = e.getMessage();
+            }
+        }
+        nanos += System.nanoTime() - start;
+        return new Compiled(name, program, constant);
+    }
+
+    Path cacheDirectory() {
+        return cacheDirectory;
+    }
+
+    synchronized String report() {
+        return String.format(
+            "%d compiled, %d loaded from %s, %d shared, %.1f ms%s",
+            compiled,
+            cached,
+            cacheDirectory,
+            shared,
+            nanos / 1e6,
+            unavailable == null ? "" : "; interpreting, " + unavailable
+        );
+    }
+
+    private static boolean[] constants(final long[] cells, final ProgramAnalysis analysis) {
+        final boolean[] written = new boolean[cells.length];
+        for (int pc = 0; pc < cells.length; pc++) {
+            if (!analysis.isInstruction(pc) || !compilable(cells[pc])) {
+                continue;
+            }
+            final Op op = Op.of(cells[pc] % 100);
+            final int output = op == Op.INPUT ? 1 : op.parameters == 3 ? 3 : 0;
+            if (output > 0 && Op.mode(cells[pc], output) == 0 && pc + output < cells.length) {
+                final long address = cells[pc + output];
+                if (address >= 0 && address < cells.length) {
+                    written[(int) address] = true;
+                }
+            }
+        }
+
+        final long relative = analysis.lowestRelativeWrite();
+        final Set<Integer> rewritten = new HashSet<>(analysis.selfModifying());
+        final boolean[] constant = new boolean[cells.length];
+        for (int cell = 0; cell < cells.length; cell++) {
+            final boolean opcode = analysis.isInstruction(cell) && !rewritten.contains(cell);
+            constant[cell] = !analysis.mayBeWritten(cell) || analysis.isCode(cell)
+                && (!written[cell] || opcode)
+                // An unbounded relative base is left to the write-into-constant guard rather than reading all code
+                && (relative == Long.MIN_VALUE || cell < relative);
+        }
+        return constant;
+    }
+
+    private static long key(final long[] cells, final int[] patchable) {
+        long key = ProgramFile.hash(cells) ^ VERSION;
+        for (final int cell : patchable) {
+            key = (key ^ cell) * 0x9E3779B97F4A7C15L;
+            key ^= key >>> 29;
+        }
+        return key;
+    }
+
+    /**
+     * Creates the cache directory for the owner only if it does not exist, and fails unless it belongs to the current
+     * user and is closed to everybody else. On file systems without POSIX permissions the directory is only created.
+     */
+    private void ensurePrivate() throws IOException {
+        if (!cacheDirectory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(cacheDirectory);
+            return;
+        }
+
+        final Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+        if (Files.notExists(cacheDirectory, LinkOption.NOFOLLOW_LINKS)) {
+            final Path parent = cacheDirectory.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try {
+                Files.createDirectory(cacheDirectory, PosixFilePermissions.asFileAttribute(ownerOnly));
+            } catch (final FileAlreadyExistsException e) {
+                // Created concurrently, checked below like any existing directory
+            }
+        }
+
+        final PosixFileAttributes attributes =
+            Files.readAttributes(cacheDirectory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        final UserPrincipal user = cacheDirectory.getFileSystem()
+            .getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!attributes.isDirectory() || !attributes.owner().equals(user)
+            || !ownerOnly.containsAll(attributes.permissions())) {
+            throw new IOException(
+                "cache " + cacheDirectory + " is not a directory owned by " + user.getName() + " and closed to others"
+            );
+        }
+    }
+
+    /**
+     * Returns the cached class of {@code name}, or null if it is missing or does not match the digests in its
+     * manifest, or the manifest does not match {@code source}.
+     */
+    private byte[] verified(final String name, final String source) throws IOException {
+        final Path manifest = cacheDirectory.resolve(name + ".sha256");
+        final Path classFile = cacheDirectory.resolve(name + ".class");
+        if (!Files.isRegularFile(manifest, LinkOption.NOFOLLOW_LINKS)
+            || !Files.isRegularFile(classFile, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+        final byte[] bytes = Files.readAllBytes(classFile);
+        final List<String> expected = List.of(sha256(source.getBytes(StandardCharsets.UTF_8)), sha256(bytes));
+        return Files.readAllLines(manifest, StandardCharsets.UTF_8).equals(expected) ? bytes : null;
+    }
+
+    private static String sha256(final byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Compiles {@code source} and stores source, class and manifest in the cache directory. Returns the class bytes
+     * as compiled, not as read back from the cache.
+     *
+     * @throws IOException if the cache cannot be written or javac reports errors
+     * @throws UnsupportedOperationException if there is no system Java compiler
+     */
+    private byte[] javac(final String name, final String source) throws IOException {
+        final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw new UnsupportedOperationException("no Java compiler available, run on a JDK to compile programs");
+        }
+
+        final Path work = Files.createTempDirectory(cacheDirectory, name);
+        try {
+            final Path sourceFile = work.resolve(name + ".java");
+            Files.writeString(sourceFile, source, StandardCharsets.UTF_8);
+            final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            try (StandardJavaFileManager files = javac.getStandardFileManager(diagnostics, null, null)) {
+                final List<String> options = List.of("-d", work.toString(), "-classpath", classPath(), "-proc:none");
+                final Iterable<? extends JavaFileObject> units = files.getJavaFileObjects(sourceFile);
+                if (!javac.getTask(null, files, diagnostics, options, null, units).call()) {
+                    throw new IOException("could not compile " + name + ": " + diagnostics.getDiagnostics());
+                }
+            }
+            final byte[] classFile = Files.readAllBytes(work.resolve(name + ".class"));
+            final Path manifest = work.resolve(name + ".sha256");
+            Files.write(
+                manifest,
+                List.of(sha256(source.getBytes(StandardCharsets.UTF_8)), sha256(classFile)),
+                StandardCharsets.UTF_8
+            );
+
+            // The manifest goes last, so a class is only trusted once source and class are both in place
+            for (final Path file : List.of(sourceFile, work.resolve(name + ".class"), manifest)) {
+                Files.move(
+                    file,
+                    cacheDirectory.resolve(file.getFileName()),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+                );
+            }
+            return classFile;
+        } finally {
+            try (Stream<Path> leftovers = Files.walk(work)) {
+                for (final Path path : leftovers.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Where the classes generated code refers to are loaded from.
+     */
+    private static String classPath() {
+        final CodeSource source = AotCompiler.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            return System.getProperty("java.class.path");
+        }
+        try {
+            return Path.of(source.getLocation().toURI()).toString();
+        } catch (final URISyntaxException e) {
+            return System.getProperty("java.class.path");
+        }
+    }
+
+    private static BytecodeCompiler.Program define(final byte[] classFile) throws IOException {
+        try {
+            final MethodHandles.Lookup hidden = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return (BytecodeCompiler.Program) hidden
+                .findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+                .invoke();
+        } catch (final VirtualMachineError e) {
+            throw e;
+        } catch (final Throwable e) {
+            throw new IOException("could not load compiled Intcode program: " + e, e);
+        }
+    }
+
+    private static String generate(
+        final String name,
+        final long[] cells,
+        final boolean[] constant,
+        final ProgramAnalysis analysis
+    ) {
+        final Map<Integer, List<ProgramAnalysis.Block>> procedures = new TreeMap<>();
+        for (final ProgramAnalysis.Block block : analysis.blocks()) {
+            if (compiledInstructions(cells, constant, block) > 0) {
+                procedures.computeIfAbsent(analysis.procedureOf(block.start), entry -> new ArrayList<>()).add(block);
+            }
+        }
+
+        final StringBuilder methods = new StringBuilder();
+        final StringBuilder dispatch = new StringBuilder();
+        for (final Map.Entry<Integer, List<ProgramAnalysis.Block>> procedure : procedures.entrySet()) {
+            final String base = procedure.getKey() < 0 ? "unowned" : "procedure" + procedure.getKey();
+            final List<ProgramAnalysis.Block> blocks = procedure.getValue();
+            int part = 0;
+            for (int from = 0; from < blocks.size(); part++) {
+                int to = from;
+                int instructions = 0;
+                do {
+                    instructions += compiledInstructions(cells, constant, blocks.get(to++));
+                } while (to < blocks.size() && instructions < MAX_METHOD_INSTRUCTIONS);
+
+                final String method = part == 0 && to == blocks.size() ? base : base + "_" + part;
+                final List<ProgramAnalysis.Block> chunk = blocks.subList(from, to);
+                for (final ProgramAnalysis.Block block : chunk) {
+                    dispatch.append("                case ").append(block.start).append(":\n");
+                }
+                dispatch.append("                    next = ").append(method).append("(c, pc, left);\n");
+                dispatch.append("                    break;\n");
+                method(methods, method, cells, constant, chunk);
+                from = to;
+            }
+        }
+
+        final String run = dispatch.length() == 0
+            ? "        return 0;\n"
+            : "        long executed = 0;\n"
+                + "        int pc = c.pos;\n"
+                + "        while (executed < budget) {\n"
+                + "            final long left = Math.min(budget - executed, Integer.MAX_VALUE);\n"
+                + "            final long next;\n"
+                + "            switch (pc) {\n"
+                + dispatch
+                + "                default:\n"
+                + "                    c.pos = pc;\n"
+                + "                    return executed;\n"
+                + "            }\n"
+                + "            executed += next >>> 32;\n"
+                + "            pc = (int) next;\n"
+                + "            if (pc < 0) {\n"
+                + "                return executed;\n"
+                + "            }\n"
+                + "        }\n"
+                + "        c.pos = pc;\n"
+                + "        return executed;\n";
+        return "/**\n"
+            + " * Generated by AotCompiler from an Intcode program of " + cells.length + " cells.\n"
+            + " */\n"
+            + "final class " + name + " implements BytecodeCompiler.Program {\n"
+            + "    @Override\n"
+            + "    public long run(final IntComp c, final long budget) {\n"
+            + run
+            + "    }\n"
+            + methods
+            + "}\n";
+    }
+
+    /**
+     * Emits a method running {@code blocks}. It returns the number of instructions executed in the upper half of a
+     * {@code long} and the next address in the lower half, or -1 once {@code c.pos} is set and generated code has to
+     * return.
+     */
+    private static void method(
+        final StringBuilder out,
+        final String method,
+        final long[] cells,
+        final boolean[] constant,
+        final List<ProgramAnalysis.Block> blocks
+    ) {
+        out.append("\n    private static long ").append(method)
+            .append("(final IntComp c, int pc, final long left) {\n");
+        out.append("        long n = 0;\n");
+        out.append("        while (true) {\n");
+        out.append("            switch (pc) {\n");
+        for (final ProgramAnalysis.Block block : blocks) {
+            block(out, cells, constant, block);
+        }
+        out.append("                default:\n");
+        out.append("                    if (pc < 0) {\n");
+        out.append("                        c.pos = pc;\n");
+        out.append("                        return n << 32 | ").append(STOP).append(";\n");
+        out.append("                    }\n");
+        out.append("                    return n << 32 | pc;\n");
+        out.append("            }\n");
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    private static void block(
+        final StringBuilder out,
+        final long[] cells,
+        final boolean[] constant,
+        final ProgramAnalysis.Block block
+    ) {
+        final String indent = "                    ";
+        final int count = compiledInstructions(cells, constant, block);
+        out.append("                case ").append(block.start).append(":\n");
+        out.append(indent).append("if (left - n < ").append(count).append(") {\n");
+        out.append(indent).append("    c.pos = ").append(block.start).append(";\n");
+        out.append(indent).append("    return n << 32 | ").append(STOP).append(";\n");
+        out.append(indent).append("}\n");
+        out.append(indent).append("n += ").append(count).append(";\n");
+
+        int pc = block.start;
+        for (int k = 0; k < count; k++) {
+            final long instr = cells[pc];
+            final Op op = Op.of(instr % 100);
+            final int next = pc + op.parameters + 1;
+            final String exitBefore = exit(count - k);
+            final String exitAfter = exit(count - k - 1);
+            switch (op) {
+                case ADD:
+                case MUL:
+                    out.append(indent).append("c.store(").append(target(cells, constant, pc, 3)).append(", IntComp.")
+                        .append(op == Op.ADD ? "add(" : "multiply(").append(operand(cells, constant, pc, 1))
+                        .append(", ").append(operand(cells, constant, pc, 2)).append(", ").append(pc).append("));\n");
+                    checkWrite(out, indent, next, exitAfter);
+                    break;
+                case LT:
+                case EQ:
+                    out.append(indent).append("c.store(").append(target(cells, constant, pc, 3)).append(", ")
+                        .append(operand(cells, constant, pc, 1)).append(op == Op.LT ? " < " : " == ")
+                        .append(operand(cells, constant, pc, 2)).append(" ? 1L : 0L);\n");
+                    checkWrite(out, indent, next, exitAfter);
+                    break;
+                case INPUT:
+                    out.append(indent).append("if (c.device != null) {\n");
+                    out.append(indent).append("    c.pos = ").append(pc).append(";\n");
+                    out.append(indent).append("    c.store(").append(target(cells, constant, pc, 1))
+                        .append(", c.device.onInput());\n");
+                    out.append(indent).append("} else if (c.input.isEmpty()) {\n");
+                    out.append(indent).append("    c.halted = true;\n");
+                    out.append(indent).append("    c.pos = ").append(pc).append(";\n");
+                    out.append(indent).append("    return ").append(exitBefore).append(";\n");
+                    out.append(indent).append("} else {\n");
+                    out.append(indent).append("    c.store(").append(target(cells, constant, pc, 1))
+                        .append(", c.input.pollLong());\n");
+                    out.append(indent).append("}\n");
+                    checkWrite(out, indent, next, exitAfter);
+                    break;
+                case OUTPUT:
+                    out.append(indent).append("if (c.device != null) {\n");
+                    out.append(indent).append("    c.pos = ").append(pc).append(";\n");
+                    out.append(indent).append("    c.device.onOutput(").append(operand(cells, constant, pc, 1))
+                        .append(");\n");
+                    out.append(indent).append("} else {\n");
+                    out.append(indent).append("    c.output.offerLong(").append(operand(cells, constant, pc, 1))
+                        .append(");\n");
+                    out.append(indent).append("}\n");
+                    break;
+                case JIT:
+                case JIF:
+                    out.append(indent).append("if (").append(operand(cells, constant, pc, 1))
+                        .append(op == Op.JIT ? " != 0" : " == 0").append(") {\n");
+                    out.append(indent).append("    pc = (int) (").append(operand(cells, constant, pc, 2))
+                        .append(");\n");
+                    out.append(indent).append("    continue;\n");
+                    out.append(indent).append("}\n");
+                    break;
+                case RBASE:
+                    out.append(indent).append("c.rbase += (int) (").append(operand(cells, constant, pc, 1))
+                        .append(");\n");
+                    break;
+                case HALT:
+                    out.append(indent).append("c.halted = true;\n");
+                    out.append(indent).append("c.terminated = true;\n");
+                    out.append(indent).append("c.pos = ").append(pc).append(";\n");
+                    out.append(indent).append("return ").append(exitAfter).append(";\n");
+                    return;
+            }
+            pc = next;
+        }
+
+        if (pc < block.end) {
+            // The rest of the block is left to the interpreter
+            out.append(indent).append("c.pos = ").append(pc).append(";\n");
+            out.append(indent).append("return n << 32 | ").append(STOP).append(";\n");
+        } else {
+            out.append(indent).append("pc = ").append(pc).append(";\n");
+            out.append(indent).append("continue;\n");
+        }
+    }
+
+    private static void checkWrite(final StringBuilder out, final String indent, final int next, final String exit) {
+        out.append(indent).append("if (c.codeModified) {\n");
+        out.append(indent).append("    c.codeModified = false;\n");
+        out.append(indent).append("    c.pos = ").append(next).append(";\n");
+        out.append(indent).append("    return ").append(exit).append(";\n");
+        out.append(indent).append("}\n");
+    }
+
+    /**
+     * Result of leaving generated code with {@code c.pos} set and {@code skipped} of the instructions counted for the
+     * current block not executed.
+     */
+    private static String exit(final int skipped) {
+        return (skipped == 0 ? "n" : "(n - " + skipped + ")") + " << 32 | " + STOP;
+    }
+
+    /**
+     * Number of instructions from the start of {@code block} that can be compiled: their opcodes are constant, known
+     * and use valid modes.
+     */
+    private static int compiledInstructions(
+        final long[] cells,
+        final boolean[] constant,
+        final ProgramAnalysis.Block block
+    ) {
+        int count = 0;
+        for (int pc = block.start; pc < block.end; count++) {
+            if (!constant[pc] || !compilable(cells[pc])) {
+                break;
+            }
+            pc += Op.of(cells[pc] % 100).parameters + 1;
+        }
+        return count;
+    }
+
+    private static boolean compilable(final long instr) {
+        final Op op = Op.of(instr % 100);
+        if (op.opCode != instr % 100) {
+            return false;
+        }
+        long modes = instr / 100;
+        for (int i = 1; i <= op.parameters; i++, modes /= 10) {
+            final long mode = modes % 10;
+            final boolean written = op == Op.INPUT || i == 3;
+            if (mode > 2 || written && mode == 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String operand(final long[] cells, final boolean[] constant, final int pc, final int parameter) {
+        final String param = cell(cells, constant, pc + parameter);
+        switch (Op.mode(cells[pc], parameter)) {
+            case 0:
+                return "c.load(" + param + ")";
+            case 1:
+                return param;
+            default:
+                return "c.load(c.rbase + " + param + ")";
+        }
+    }
+
+    private static String target(final long[] cells, final boolean[] constant, final int pc, final int parameter) {
+        final String param = cell(cells, constant, pc + parameter);
+        return Op.mode(cells[pc], parameter) == 2 ? "c.rbase + " + param : param;
+    }
+
+    /**
+     * The value of {@code cell} as a literal if it is constant, or an expression that reads it.
+     */
+    private static String cell(final long[] cells, final boolean[] constant, final int cell) {
+        if (cell >= cells.length || !constant[cell]) {
+            return "c.load(" + cell + "L)";
+        }
+        return cells[cell] < 0 ? "(" + cells[cell] + "L)" : cells[cell] + "L";
+    }
+
+    /**
+     * A program compiled for one image and set of patchable cells, or the interpreter if it could not be compiled.
+     * Hands out a backend per computer.
+     */
+    static final class Compiled {
+        private final String name;
+        private final BytecodeCompiler.Program program;
+        private final boolean[] constant;
+
+        private Compiled(final String name, final BytecodeCompiler.Program program, final boolean[] constant) {
+            this.name = name;
+            this.program = program;
+            this.constant = constant;
+        }
+
+        String name() {
+            return name;
+        }
+
+        /**
+         * Returns a backend that runs the compiled program. It must only be attached to one computer, started from
+         * the image this program was compiled from.
+         */
+        IntComp.Backend newBackend() {
+            return new Runner();
+        }
+
+        private class Runner implements IntComp.Backend {
+            private boolean deoptimized = program == null;
+
+            @Override
+            public long run(final IntComp comp, final long maxInstructions) {
+                long executed = 0;
+                while (executed < maxInstructions && comp.hasMoreInstructions()) {
+                    if (deoptimized) {
+                        return executed + comp.interpret(maxInstructions - executed);
+                    }
+                    final long ran = program.run(comp, maxInstructions - executed);
+                    executed += ran;
+                    if (ran == 0 && comp.hasMoreInstructions()) {
+                        executed += comp.interpret(1);
+                    }
+                }
+                return executed;
+            }
+
+            @Override
+            public boolean written(final long address) {
+                if (deoptimized || address >= constant.length || !constant[(int) address]) {
+                    return false;
+                }
+                deoptimized = true;
+                return true;
+            }
+        }
+    }
+}
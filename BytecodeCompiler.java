@@ -0,0 +1,872 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translates an Intcode program into JVM bytecode and loads it as a hidden class.
+ *
+ * Every basic block becomes a static method of the generated class that returns the address of the next block. A
+ * generated {@code run} method dispatches on block entry points with a {@code lookupswitch}, so jumps between
+ * compiled blocks never leave generated code. Memory stays the paged {@link Memory} of the computer and is accessed
+ * through {@link IntComp#load(long)} and {@link IntComp#store(long, long)}, which the JIT inlines. Additions and
+ * multiplications go through {@link IntComp#add(long, long, int)} and {@link IntComp#multiply(long, long, int)}, so an
+ * overflow leaves generated code with the address of the instruction.
+ *
+ * Blocks are found statically from address 0 by following fall-through and immediate jump targets. The cell after
+ * an unconditional jump is only treated as code if the program mentions its address as an immediate value, which is
+ * how Intcode programs push return addresses. Jumps to addresses that were not found leave generated code, and the
+ * computer runs on in the interpreter until it reaches a compiled entry point again.
+ *
+ * A write into a compiled cell returns from generated code right after the write. The written cell is then treated
+ * as self-modifying code and the program is recompiled: a modified operand is read from memory at run time, and a
+ * modified opcode is left to the interpreter. A computer that keeps modifying new cells is deoptimized and stays in
+ * the interpreter once it has been recompiled {@value #MAX_RECOMPILATIONS} times.
+ *
+ * Generated classes do not hold any state of a computer, so they are cached by the contents of the cells they were
+ * compiled from. Computers running the same program share one class, which the JVM only has to warm up once.
+ */
+class BytecodeCompiler {
+    private static final int MAX_BLOCK_INSTRUCTIONS = 64;
+    private static final int MAX_BLOCKS = 320;
+    private static final int MAX_RECOMPILATIONS = 16;
+    private static final int MAX_COMPILED_CELLS = 1 << 20;
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private final Map<Source, Program> programs = new HashMap<>();
+
+    /**
+     * Compiles the current memory of {@code comp} and returns a backend that runs it. The backend must only be
+     * attached to {@code comp}.
+     */
+    Runner compile(final IntComp comp) {
+        final Runner runner = new Runner();
+        runner.recompile(comp.memory.toArray(MAX_COMPILED_CELLS));
+        return runner;
+    }
+
+    /**
+     * Number of distinct classes generated so far.
+     */
+    synchronized int compiledPrograms() {
+        return programs.size();
+    }
+
+    private synchronized Program program(
+        final Source source,
+        final long[] memory,
+        final boolean[] dirty,
+        final List<BlockInfo> blocks
+    ) {
+        Program program = programs.get(source);
+        if (program == null) {
+            program = define(generate(memory, dirty, blocks));
+            programs.put(source, program);
+        }
+        return program;
+    }
+
+    private Program define(final byte[] classFile) {
+        try {
+            final MethodHandles.Lookup hidden = lookup.defineHiddenClass(classFile, true);
+            return (Program) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (final Throwable e) {
+            throw new IllegalStateException("Could not load generated Intcode program", e);
+        }
+    }
+
+    private static List<BlockInfo> findBlocks(final long[] memory, final boolean[] dirty) {
+        final Set<Long> immediates = new HashSet<>();
+        for (int pc = 0; pc < memory.length; ) {
+            final Op op = Op.of(memory[pc] % 100);
+            for (int i = 1; i <= op.parameters && pc + i < memory.length; i++) {
+                if (Op.mode(memory[pc], i) == 1) {
+                    immediates.add(memory[pc + i]);
+                }
+            }
+            pc += op.parameters + 1;
+        }
+
+        final List<BlockInfo> blocks = new ArrayList<>();
+        final Set<Integer> seen = new HashSet<>();
+        final Deque<Integer> work = new ArrayDeque<>();
+        work.add(0);
+
+        while (!work.isEmpty() && blocks.size() < MAX_BLOCKS) {
+            final int start = work.poll();
+            if (start < 0 || start >= memory.length || !seen.add(start)) {
+                continue;
+            }
+
+            int pc = start;
+            int length = 0;
+            Op last = null;
+            while (length < MAX_BLOCK_INSTRUCTIONS && pc < memory.length && !dirty[pc] && Op.validModes(memory[pc])) {
+                last = Op.of(memory[pc] % 100);
+                length++;
+                if (last == Op.JIT || last == Op.JIF) {
+                    final long condition = cell(memory, pc + 1);
+                    final boolean constant = Op.mode(memory[pc], 1) == 1 && !isDirty(dirty, pc + 1);
+                    final boolean always = constant && (last == Op.JIT) == (condition != 0);
+                    if (Op.mode(memory[pc], 2) == 1 && !isDirty(dirty, pc + 2)) {
+                        work.add((int) cell(memory, pc + 2));
+                    }
+                    final int fallThrough = pc + 3;
+                    if (!always || immediates.contains((long) fallThrough)) {
+                        work.add(fallThrough);
+                    }
+                }
+                pc += last.parameters + 1;
+                if (last == Op.JIT || last == Op.JIF || last == Op.HALT) {
+                    break;
+                }
+            }
+
+            if (length == 0) {
+                continue;
+            }
+            if (last != Op.JIT && last != Op.JIF && last != Op.HALT) {
+                work.add(pc);
+            }
+            blocks.add(new BlockInfo(start, Math.min(pc, memory.length), length));
+        }
+        return blocks;
+    }
+
+    private static long cell(final long[] memory, final int address) {
+        return address < memory.length ? memory[address] : 0;
+    }
+
+    private static boolean isDirty(final boolean[] dirty, final int cell) {
+        return cell < dirty.length && dirty[cell];
+    }
+
+    private static byte[] generate(final long[] memory, final boolean[] dirty, final List<BlockInfo> blocks) {
+        final ClassFile cf = new ClassFile("IntcodeProgram", "BytecodeCompiler$Program");
+
+        final Code init = new Code();
+        init.op(ALOAD_0).op(INVOKESPECIAL).u2(cf.method("java/lang/Object", "<init>", "()V")).op(RETURN);
+        cf.addMethod(ACC_PUBLIC, "<init>", "()V", init, 1, 1);
+
+        int maxLength = 1;
+        for (final BlockInfo block : blocks) {
+            maxLength = Math.max(maxLength, block.length);
+            cf.addMethod(ACC_STATIC, "b" + block.start, "(LIntComp;)I", block(cf, memory, dirty, block), 16, 1);
+        }
+        cf.addMethod(ACC_PUBLIC, "run", "(LIntComp;J)J", dispatcher(cf, blocks, maxLength), 6, 9);
+        return cf.toBytes();
+    }
+
+    /**
+     * {@code long run(IntComp c, long budget)}: locals are 1 = c, 2 = budget, 4 = executed, 6 = pc, 7 = r, 8 = len.
+     */
+    private static Code dispatcher(final ClassFile cf, final List<BlockInfo> blocks, final int maxLength) {
+        final Code code = new Code();
+        final int pos = cf.field("IntComp", "pos", "I");
+
+        code.op(LCONST_0).op(LSTORE).u1(4);
+        code.op(ALOAD_1).op(GETFIELD).u2(pos).op(ISTORE).u1(6);
+
+        final Label loop = code.label();
+        final Label exit = new Label();
+        final Label common = new Label();
+        final Label stop = new Label();
+        final Label budgetLeft = new Label();
+
+        code.op(LLOAD_2).op(LLOAD).u1(4).op(LSUB).ldc2(cf, maxLength).op(LCMP).branch(IFGE, budgetLeft);
+        code.jumpWide(exit);
+        code.place(budgetLeft);
+
+        final List<BlockInfo> sorted = new ArrayList<>(blocks);
+        sorted.sort((a, b) -> Integer.compare(a.start, b.start));
+        final List<Label> cases = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            cases.add(new Label());
+        }
+
+        code.op(ILOAD).u1(6);
+        code.lookupSwitch(exit, sorted, cases);
+        for (int i = 0; i < sorted.size(); i++) {
+            final BlockInfo block = sorted.get(i);
+            code.place(cases.get(i));
+            code.op(ALOAD_1).op(INVOKESTATIC).u2(cf.method("IntcodeProgram", "b" + block.start, "(LIntComp;)I"));
+            code.pushInt(cf, block.length);
+            code.jumpWide(common);
+        }
+
+        code.place(common);
+        code.op(ISTORE).u1(8).op(ISTORE).u1(7);
+        code.op(ILOAD).u1(7).branch(IFLT, stop);
+        code.op(LLOAD).u1(4).op(ILOAD).u1(8).op(I2L).op(LADD).op(LSTORE).u1(4);
+        code.op(ILOAD).u1(7).op(ISTORE).u1(6);
+        code.jumpWide(loop);
+
+        code.place(stop);
+        code.op(LLOAD).u1(4).op(ILOAD).u1(7).op(ICONST_M1).op(IXOR).op(I2L).op(LADD).op(LRETURN);
+
+        code.place(exit);
+        code.op(ALOAD_1).op(ILOAD).u1(6).op(PUTFIELD).u2(pos);
+        code.op(LLOAD).u1(4).op(LRETURN);
+        return code;
+    }
+
+    /**
+     * {@code static int bN(IntComp c)}: returns the next address, or {@code ~executed} after storing the stop address
+     * in {@code c.pos}. Local 0 is c.
+     */
+    private static Code block(final ClassFile cf, final long[] memory, final boolean[] dirty, final BlockInfo block) {
+        final Code code = new Code();
+        int pc = block.start;
+        for (int k = 0; k < block.length; k++) {
+            final long instr = memory[pc];
+            final Op op = Op.of(instr % 100);
+            final int next = pc + op.parameters + 1;
+
+            switch (op) {
+                case ADD:
+                case MUL:
+                    target(code, cf, memory, dirty, pc, 3);
+                    operand(code, cf, memory, dirty, pc, 1);
+                    operand(code, cf, memory, dirty, pc, 2);
+                    code.pushInt(cf, pc);
+                    code.op(INVOKESTATIC).u2(cf.method("IntComp", op == Op.ADD ? "add" : "multiply", "(JJI)J"));
+                    store(code, cf, next, k + 1);
+                    break;
+                case LT:
+                case EQ: {
+                    final Label no = new Label();
+                    final Label done = new Label();
+                    target(code, cf, memory, dirty, pc, 3);
+                    operand(code, cf, memory, dirty, pc, 1);
+                    operand(code, cf, memory, dirty, pc, 2);
+                    code.op(LCMP).branch(op == Op.LT ? IFGE : IFNE, no);
+                    code.op(LCONST_1).branch(GOTO, done);
+                    code.place(no);
+                    code.op(LCONST_0);
+                    code.place(done);
+                    store(code, cf, next, k + 1);
+                    break;
+                }
+                case INPUT: {
+                    final Label channel = new Label();
+                    final Label ok = new Label();
+                    code.op(ALOAD_0).op(GETFIELD).u2(device(cf)).branch(IFNULL, channel);
+                    code.op(ALOAD_0).pushInt(cf, pc).op(PUTFIELD).u2(cf.field("IntComp", "pos", "I"));
+                    target(code, cf, memory, dirty, pc, 1);
+                    code.op(ALOAD_0).op(GETFIELD).u2(device(cf));
+                    code.op(INVOKEINTERFACE).u2(cf.interfaceMethod("IoDevice", "onInput", "()J")).u1(1).u1(0);
+                    store(code, cf, next, k + 1);
+                    code.branch(GOTO, ok);
+
+                    code.place(channel);
+                    final Label available = new Label();
+                    final int input = cf.field("IntComp", "input", "LLongChannel;");
+                    code.op(ALOAD_0).op(GETFIELD).u2(input);
+                    code.op(INVOKEVIRTUAL).u2(cf.method("LongChannel", "isEmpty", "()Z")).branch(IFEQ, available);
+                    setFlag(code, cf, "halted");
+                    exit(code, cf, pc, k);
+                    code.place(available);
+                    target(code, cf, memory, dirty, pc, 1);
+                    code.op(ALOAD_0).op(GETFIELD).u2(input);
+                    code.op(INVOKEVIRTUAL).u2(cf.method("LongChannel", "pollLong", "()J"));
+                    store(code, cf, next, k + 1);
+                    code.place(ok);
+                    break;
+                }
+                case OUTPUT: {
+                    final Label channel = new Label();
+                    final Label done = new Label();
+                    code.op(ALOAD_0).op(GETFIELD).u2(device(cf)).branch(IFNULL, channel);
+                    code.op(ALOAD_0).pushInt(cf, pc).op(PUTFIELD).u2(cf.field("IntComp", "pos", "I"));
+                    code.op(ALOAD_0).op(GETFIELD).u2(device(cf));
+                    operand(code, cf, memory, dirty, pc, 1);
+                    code.op(INVOKEINTERFACE).u2(cf.interfaceMethod("IoDevice", "onOutput", "(J)V")).u1(3).u1(0);
+                    code.branch(GOTO, done);
+
+                    code.place(channel);
+                    code.op(ALOAD_0).op(GETFIELD).u2(cf.field("IntComp", "output", "LLongChannel;"));
+                    operand(code, cf, memory, dirty, pc, 1);
+                    code.op(INVOKEVIRTUAL).u2(cf.method("LongChannel", "offerLong", "(J)V"));
+                    code.place(done);
+                    break;
+                }
+                case JIT:
+                case JIF: {
+                    final Label fallThrough = new Label();
+                    operand(code, cf, memory, dirty, pc, 1);
+                    code.op(LCONST_0).op(LCMP).branch(op == Op.JIT ? IFEQ : IFNE, fallThrough);
+                    operand(code, cf, memory, dirty, pc, 2);
+                    code.op(L2I).op(IRETURN);
+                    code.place(fallThrough);
+                    code.pushInt(cf, next).op(IRETURN);
+                    break;
+                }
+                case RBASE: {
+                    final int rbase = cf.field("IntComp", "rbase", "I");
+                    code.op(ALOAD_0).op(DUP).op(GETFIELD).u2(rbase);
+                    operand(code, cf, memory, dirty, pc, 1);
+                    code.op(L2I).op(IADD).op(PUTFIELD).u2(rbase);
+                    break;
+                }
+                case HALT:
+                default:
+                    setFlag(code, cf, "halted");
+                    setFlag(code, cf, "terminated");
+                    exit(code, cf, pc, k + 1);
+                    break;
+            }
+            pc = next;
+        }
+
+        code.pushInt(cf, pc).op(IRETURN);
+        return code;
+    }
+
+    private static void operand(
+        final Code code,
+        final ClassFile cf,
+        final long[] memory,
+        final boolean[] dirty,
+        final int pc,
+        final int i
+    ) {
+        switch (Op.mode(memory[pc], i)) {
+            case 0:
+                code.op(ALOAD_0);
+                param(code, cf, memory, dirty, pc + i);
+                code.op(INVOKEVIRTUAL).u2(cf.method("IntComp", "load", "(J)J"));
+                break;
+            case 1:
+                param(code, cf, memory, dirty, pc + i);
+                break;
+            case 2:
+                code.op(ALOAD_0);
+                relative(code, cf, memory, dirty, pc + i);
+                code.op(INVOKEVIRTUAL).u2(cf.method("IntComp", "load", "(J)J"));
+                break;
+        }
+    }
+
+    /**
+     * Pushes the computer and the address to write to, ready for {@link #store(Code, ClassFile, int, int)}.
+     */
+    private static void target(
+        final Code code,
+        final ClassFile cf,
+        final long[] memory,
+        final boolean[] dirty,
+        final int pc,
+        final int i
+    ) {
+        code.op(ALOAD_0);
+        if (Op.mode(memory[pc], i) == 2) {
+            relative(code, cf, memory, dirty, pc + i);
+        } else {
+            param(code, cf, memory, dirty, pc + i);
+        }
+    }
+
+    private static void relative(
+        final Code code,
+        final ClassFile cf,
+        final long[] memory,
+        final boolean[] dirty,
+        final int cell
+    ) {
+        code.op(ALOAD_0).op(GETFIELD).u2(cf.field("IntComp", "rbase", "I")).op(I2L);
+        param(code, cf, memory, dirty, cell);
+        code.op(LADD);
+    }
+
+    /**
+     * Pushes the raw value of an operand cell: a constant, or a memory read if the cell has been modified.
+     */
+    private static void param(
+        final Code code,
+        final ClassFile cf,
+        final long[] memory,
+        final boolean[] dirty,
+        final int cell
+    ) {
+        if (isDirty(dirty, cell)) {
+            code.op(ALOAD_0).ldc2(cf, cell).op(INVOKEVIRTUAL).u2(cf.method("IntComp", "load", "(J)J"));
+        } else {
+            code.ldc2(cf, cell(memory, cell));
+        }
+    }
+
+    /**
+     * Stores the value on the stack and leaves the block if the write hit compiled code.
+     */
+    private static void store(final Code code, final ClassFile cf, final int next, final int executed) {
+        final int codeModified = cf.field("IntComp", "codeModified", "Z");
+        final Label unchanged = new Label();
+        code.op(INVOKEVIRTUAL).u2(cf.method("IntComp", "store", "(JJ)V"));
+        code.op(ALOAD_0).op(GETFIELD).u2(codeModified).branch(IFEQ, unchanged);
+        code.op(ALOAD_0).op(ICONST_0).op(PUTFIELD).u2(codeModified);
+        exit(code, cf, next, executed);
+        code.place(unchanged);
+    }
+
+    private static int device(final ClassFile cf) {
+        return cf.field("IntComp", "device", "LIoDevice;");
+    }
+
+    private static void setFlag(final Code code, final ClassFile cf, final String flag) {
+        code.op(ALOAD_0).op(ICONST_1).op(PUTFIELD).u2(cf.field("IntComp", flag, "Z"));
+    }
+
+    private static void exit(final Code code, final ClassFile cf, final int pc, final int executed) {
+        code.op(ALOAD_0).pushInt(cf, pc).op(PUTFIELD).u2(cf.field("IntComp", "pos", "I"));
+        code.pushInt(cf, ~executed).op(IRETURN);
+    }
+
+    /**
+     * Implemented by every generated program.
+     */
+    interface Program {
+
+        /**
+         * Runs compiled blocks starting at {@code comp.pos} until the computer halts, leaves compiled code or fewer
+         * than a block's worth of {@code budget} instructions remain. Returns the number of instructions executed.
+         */
+        long run(IntComp comp, long budget);
+    }
+
+    private static class BlockInfo {
+        private final int start;
+        private final int end;
+        private final int length;
+
+        private BlockInfo(final int start, final int end, final int length) {
+            this.start = start;
+            this.end = end;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The compiled cells of a program: start and end of every block followed by the cells of that block. Dynamic
+     * cells are marked separately, since their values are not part of the generated code.
+     */
+    private static class Source {
+        private final long[] cells;
+        private final boolean[] dynamic;
+        private final int hash;
+
+        private Source(final long[] cells, final boolean[] dynamic) {
+            this.cells = cells;
+            this.dynamic = dynamic;
+            this.hash = Arrays.hashCode(cells) * 31 + Arrays.hashCode(dynamic);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            final Source other = (Source) o;
+            return Arrays.equals(cells, other.cells) && Arrays.equals(dynamic, other.dynamic);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Runs one computer on generated code.
+     */
+    class Runner implements IntComp.Backend {
+        private Program program;
+        private boolean[] code = new boolean[0];
+        private boolean[] dirty = new boolean[0];
+        private boolean stale = false;
+        private boolean deoptimized = false;
+        private int recompilations = 0;
+
+        @Override
+        public long run(final IntComp comp, final long maxInstructions) {
+            long executed = 0;
+            while (executed < maxInstructions && comp.hasMoreInstructions()) {
+                if (deoptimized) {
+                    return executed + comp.interpret(maxInstructions - executed);
+                }
+                if (stale) {
+                    recompile(comp.memory.toArray(MAX_COMPILED_CELLS));
+                }
+
+                final long compiled = program.run(comp, maxInstructions - executed);
+                executed += compiled;
+                if (compiled == 0 && comp.hasMoreInstructions()) {
+                    executed += comp.interpret(1);
+                }
+            }
+            return executed;
+        }
+
+        @Override
+        public boolean written(final long address) {
+            if (address >= code.length || !code[(int) address]) {
+                return false;
+            }
+
+            dirty[(int) address] = true;
+            code[(int) address] = false;
+            if (++recompilations > MAX_RECOMPILATIONS) {
+                deoptimized = true;
+            } else {
+                stale = true;
+            }
+            return true;
+        }
+
+        boolean isDeoptimized() {
+            return deoptimized;
+        }
+
+        int recompilations() {
+            return Math.min(recompilations, MAX_RECOMPILATIONS);
+        }
+
+        private void recompile(final long[] memory) {
+            if (dirty.length < memory.length) {
+                dirty = Arrays.copyOf(dirty, memory.length);
+            }
+
+            final List<BlockInfo> blocks = findBlocks(memory, dirty);
+            code = new boolean[memory.length];
+            int cells = 0;
+            for (final BlockInfo block : blocks) {
+                cells += block.end - block.start + 2;
+            }
+
+            final long[] source = new long[cells];
+            final boolean[] dynamic = new boolean[cells];
+            int i = 0;
+            for (final BlockInfo block : blocks) {
+                source[i++] = block.start;
+                source[i++] = block.end;
+                for (int cell = block.start; cell < block.end; cell++) {
+                    code[cell] = !dirty[cell];
+                    dynamic[i] = dirty[cell];
+                    source[i++] = dirty[cell] ? 0 : memory[cell];
+                }
+            }
+
+            program = program(new Source(source, dynamic), memory, dirty, blocks);
+            stale = false;
+        }
+    }
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+
+    private static final int ICONST_M1 = 0x02;
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int LCONST_0 = 0x09;
+    private static final int LCONST_1 = 0x0a;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int LLOAD_2 = 0x20;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ISTORE = 0x36;
+    private static final int LSTORE = 0x37;
+    private static final int DUP = 0x59;
+    private static final int IADD = 0x60;
+    private static final int LADD = 0x61;
+    private static final int LSUB = 0x65;
+    private static final int IXOR = 0x82;
+    private static final int I2L = 0x85;
+    private static final int L2I = 0x88;
+    private static final int LCMP = 0x94;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int GOTO = 0xa7;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int IRETURN = 0xac;
+    private static final int LRETURN = 0xad;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int IFNULL = 0xc6;
+    private static final int GOTO_W = 0xc8;
+
+    private static class Label {
+        private int offset = -1;
+        private final List<int[]> uses = new ArrayList<>();
+    }
+
+    /**
+     * A method body under construction. Branches to labels are patched once the label is placed.
+     */
+    private static class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final Set<Label> labels = new HashSet<>();
+
+        Code op(final int opcode) {
+            return u1(opcode);
+        }
+
+        Code u1(final int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Code u2(final int value) {
+            return u1(value >> 8 & 0xFF).u1(value & 0xFF);
+        }
+
+        Code u4(final int value) {
+            return u2(value >> 16 & 0xFFFF).u2(value & 0xFFFF);
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        Code pushInt(final ClassFile cf, final int value) {
+            if (value >= -1 && value <= 5) {
+                return op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                return op(BIPUSH).u1(value & 0xFF);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return op(SIPUSH).u2(value & 0xFFFF);
+            }
+            return op(LDC_W).u2(cf.integer(value));
+        }
+
+        Code ldc2(final ClassFile cf, final long value) {
+            if (value == 0 || value == 1) {
+                return op(value == 0 ? LCONST_0 : LCONST_1);
+            }
+            return op(LDC2_W).u2(cf.longConstant(value));
+        }
+
+        Label label() {
+            final Label label = new Label();
+            place(label);
+            return label;
+        }
+
+        void place(final Label label) {
+            label.offset = size();
+        }
+
+        Code branch(final int opcode, final Label label) {
+            labels.add(label);
+            label.uses.add(new int[] {size(), size() + 1, 2});
+            return op(opcode).u2(0);
+        }
+
+        Code jumpWide(final Label label) {
+            labels.add(label);
+            label.uses.add(new int[] {size(), size() + 1, 4});
+            return op(GOTO_W).u4(0);
+        }
+
+        void lookupSwitch(final Label otherwise, final List<BlockInfo> keys, final List<Label> targets) {
+            final int opcodeAt = size();
+            op(LOOKUPSWITCH);
+            while (size() % 4 != 0) {
+                u1(0);
+            }
+            labels.add(otherwise);
+            labels.addAll(targets);
+            otherwise.uses.add(new int[] {opcodeAt, size(), 4});
+            u4(0);
+            u4(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                u4(keys.get(i).start);
+                targets.get(i).uses.add(new int[] {opcodeAt, size(), 4});
+                u4(0);
+            }
+        }
+
+        byte[] toBytes() {
+            final byte[] code = bytes.toByteArray();
+            for (final Label label : labels) {
+                for (final int[] use : label.uses) {
+                    final int delta = label.offset - use[0];
+                    if (use[2] == 2) {
+                        if (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) {
+                            throw new IllegalStateException("Branch too far: " + delta);
+                        }
+                        code[use[1]] = (byte) (delta >> 8);
+                        code[use[1] + 1] = (byte) delta;
+                    } else {
+                        code[use[1]] = (byte) (delta >> 24);
+                        code[use[1] + 1] = (byte) (delta >> 16);
+                        code[use[1] + 2] = (byte) (delta >> 8);
+                        code[use[1] + 3] = (byte) delta;
+                    }
+                }
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Just enough of the class file format to emit one class. Version 49 is used so no stack map frames are needed.
+     */
+    private static class ClassFile {
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream poolOut = new DataOutputStream(pool);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        private final DataOutputStream methodsOut = new DataOutputStream(methods);
+        private int poolSize = 1;
+        private int methodCount = 0;
+        private final int thisClass;
+        private final int superClass;
+        private final int iface;
+
+        ClassFile(final String name, final String interfaceName) {
+            thisClass = classRef(name);
+            superClass = classRef("java/lang/Object");
+            iface = classRef(interfaceName);
+        }
+
+        int utf8(final String value) {
+            return entry("U" + value, 1, 1, out -> out.writeUTF(value));
+        }
+
+        int classRef(final String name) {
+            final int nameIndex = utf8(name);
+            return entry("C" + name, 1, 7, out -> out.writeShort(nameIndex));
+        }
+
+        int integer(final int value) {
+            return entry("I" + value, 1, 3, out -> out.writeInt(value));
+        }
+
+        int longConstant(final long value) {
+            return entry("J" + value, 2, 5, out -> out.writeLong(value));
+        }
+
+        int field(final String owner, final String name, final String descriptor) {
+            return member(9, owner, name, descriptor);
+        }
+
+        int method(final String owner, final String name, final String descriptor) {
+            return member(10, owner, name, descriptor);
+        }
+
+        int interfaceMethod(final String owner, final String name, final String descriptor) {
+            return member(11, owner, name, descriptor);
+        }
+
+        private int member(final int tag, final String owner, final String name, final String descriptor) {
+            final int ownerIndex = classRef(owner);
+            final int nameIndex = utf8(name);
+            final int descriptorIndex = utf8(descriptor);
+            final int nameAndType = entry("N" + name + descriptor, 1, 12, out -> {
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return entry(tag + owner + "." + name + descriptor, 1, tag, out -> {
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private int entry(final String key, final int slots, final int tag, final PoolWriter writer) {
+            final Integer existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                poolOut.writeByte(tag);
+                writer.write(poolOut);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            final int index = poolSize;
+            poolSize += slots;
+            entries.put(key, index);
+            return index;
+        }
+
+        void addMethod(
+            final int access,
+            final String name,
+            final String descriptor,
+            final Code code,
+            final int maxStack,
+            final int maxLocals
+        ) {
+            final int nameIndex = utf8(name);
+            final int descriptorIndex = utf8(descriptor);
+            final int codeName = utf8("Code");
+            final byte[] body = code.toBytes();
+            try {
+                methodsOut.writeShort(access);
+                methodsOut.writeShort(nameIndex);
+                methodsOut.writeShort(descriptorIndex);
+                methodsOut.writeShort(1);
+                methodsOut.writeShort(codeName);
+                methodsOut.writeInt(12 + body.length);
+                methodsOut.writeShort(maxStack);
+                methodsOut.writeShort(maxLocals);
+                methodsOut.writeInt(body.length);
+                methodsOut.write(body);
+                methodsOut.writeShort(0);
+                methodsOut.writeShort(0);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methodCount++;
+        }
+
+        byte[] toBytes() {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(49);
+                out.writeShort(poolSize);
+                pool.writeTo(out);
+                out.writeShort(0x0030);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(iface);
+                out.writeShort(0);
+                out.writeShort(methodCount);
+                methods.writeTo(out);
+                out.writeShort(0);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    @FunctionalInterface
+    private interface PoolWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
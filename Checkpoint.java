@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Saves a running {@link IntComp} to a file and restores it from there.
+ *
+ * A checkpoint is taken against the program image the computer was started from and only stores the memory pages
+ * that differ from that image. The file is laid out as follows, big-endian:
+ *
+ * <pre>
+ * int   magic "ICKP"        long  image hash       long  image length     long  memory size
+ * int   pc                  int   relative base    byte  flags (1 = halted, 2 = terminated)
+ * int   input count         long  input values...
+ * int   output count        long  output values...
+ * int   page count          long  page numbers...
+ * padding to 8 bytes        long  page contents, {@link Memory#PAGE_SIZE} per page...
+ * </pre>
+ *
+ * Checkpoints are written to a temporary file that replaces the old checkpoint once it is complete, so a crash while
+ * saving leaves the previous checkpoint intact. Restoring maps the file and copies the stored pages in bulk from the
+ * mapped view straight into memory pages; pages that match the image are never read from the file. A truncated or
+ * corrupt file fails the restore with an {@link IOException}.
+ */
+class Checkpoint {
+    private static final int MAGIC = 0x49434B50;
+    private static final int HALTED = 1;
+    private static final int TERMINATED = 2;
+
+    private Checkpoint() {
+    }
+
+    static void save(final IntComp comp, final long[] image, final Path file) throws IOException {
+        final long[] output = new long[comp.output.size()];
+        int count = 0;
+        for (final long value : comp.output) {
+            output[count++] = value;
+        }
+        save(comp, image, output, file);
+    }
+
+    /**
+     * Like {@link #save(IntComp, long[], Path)}, but stores {@code output} as the unread output instead of the
+     * contents of the output channel, for a computer whose output goes to a device that keeps its own state. The
+     * computer and its channels are left untouched.
+     */
+    static void save(final IntComp comp, final long[] image, final long[] output, final Path file) throws IOException {
+        if (comp.isWide()) {
+            throw new IllegalStateException("Cannot checkpoint a computer holding values wider than 64 bits");
+        }
+        final Memory memory = comp.memory;
+        final List<Long> changed = new ArrayList<>();
+        for (final long number : memory.pageNumbers()) {
+            if (!matchesImage(memory.readPage(number), image, number)) {
+                changed.add(number);
+            }
+        }
+
+        final int header = 4 + 8 + 8 + 8 + 4 + 4 + 1;
+        final int channels = 4 + 8 * comp.input.size() + 4 + 8 * output.length;
+        final int pageTable = 4 + 8 * changed.size();
+        final int dataStart = align(header + channels + pageTable);
+        final long length = dataStart + (long) changed.size() * Memory.PAGE_SIZE * 8;
+
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+            temp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        )) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putInt(MAGIC);
+            buffer.putLong(hash(image));
+            buffer.putLong(image.length);
+            buffer.putLong(memory.size());
+            buffer.putInt(comp.pos);
+            buffer.putInt(comp.rbase);
+            buffer.put((byte) ((comp.halted ? HALTED : 0) | (comp.terminated ? TERMINATED : 0)));
+            putChannel(buffer, comp.input);
+            buffer.putInt(output.length);
+            for (final long value : output) {
+                buffer.putLong(value);
+            }
+            buffer.putInt(changed.size());
+            for (final long number : changed) {
+                buffer.putLong(number);
+            }
+
+            buffer.position(dataStart);
+            final LongBuffer pages = buffer.asLongBuffer();
+            for (final long number : changed) {
+                pages.put(memory.readPage(number));
+            }
+            buffer.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores a computer saved with {@link #save(IntComp, long[], Path)}. Fails if the checkpoint was taken against a
+     * different image. The restored computer has no backend attached.
+     */
+    static IntComp restore(final long[] image, final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an Intcode checkpoint: " + file);
+            }
+            if (buffer.getLong() != hash(image) || buffer.getLong() != image.length) {
+                throw new IOException("Checkpoint was taken from a different program: " + file);
+            }
+            return restore(image, buffer);
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt checkpoint: " + file, e);
+        }
+    }
+
+    private static IntComp restore(final long[] image, final MappedByteBuffer buffer) {
+        final Memory memory = new Memory(image);
+        memory.ensureSize(buffer.getLong());
+        final IntComp comp = new IntComp(memory, new LongChannel(), new LongChannel());
+        comp.pos = buffer.getInt();
+        comp.rbase = buffer.getInt();
+        final byte flags = buffer.get();
+        comp.halted = (flags & HALTED) != 0;
+        comp.terminated = (flags & TERMINATED) != 0;
+        getChannel(buffer, comp.input);
+        getChannel(buffer, comp.output);
+
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / Long.BYTES) {
+            throw new IllegalArgumentException("Page count out of range: " + count);
+        }
+        final long[] numbers = new long[count];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = buffer.getLong();
+        }
+
+        buffer.position(align(buffer.position()));
+        final LongBuffer pages = buffer.asLongBuffer();
+        for (final long number : numbers) {
+            memory.loadPage(number, pages);
+        }
+        return comp;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the cells of a program image.
+     */
+    static long hash(final long[] image) {
+        long hash = 0xcbf29ce484222325L;
+        for (final long cell : image) {
+            for (int shift = 0; shift < 64; shift += 8) {
+                hash ^= cell >>> shift & 0xFF;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    private static boolean matchesImage(final long[] page, final long[] image, final long number) {
+        final long start = number * Memory.PAGE_SIZE;
+        final int fromImage = (int) Math.max(0, Math.min(Memory.PAGE_SIZE, image.length - start));
+        if (fromImage > 0 && !Arrays.equals(page, 0, fromImage, image, (int) start, (int) start + fromImage)) {
+            return false;
+        }
+        for (int i = fromImage; i < page.length; i++) {
+            if (page[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putChannel(final MappedByteBuffer buffer, final LongChannel channel) {
+        buffer.putInt(channel.size());
+        for (final long value : channel) {
+            buffer.putLong(value);
+        }
+    }
+
+    private static void getChannel(final MappedByteBuffer buffer, final LongChannel channel) {
+        final int size = buffer.getInt();
+        for (int i = 0; i < size; i++) {
+            channel.offerLong(buffer.getLong());
+        }
+    }
+
+    private static int align(final int position) {
+        return (position + 7) & ~7;
+    }
+}
@@ -0,0 +1,461 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles Intcode basic blocks into chains of pre-bound lambdas.
+ *
+ * Addressing modes are resolved when a block is compiled, so the compiled nodes never switch on a mode. A block runs
+ * from its entry point up to and including the first jump, input or halt instruction, except that it follows jumps
+ * that are always taken to a constant address, like the {@code 1105,1,target} an Intcode compiler emits for a goto.
+ * Such a jump runs as part of the node before it, so a call or return through it does not leave the block. Compiled
+ * blocks only depend on the memory cells they were compiled from, so one compiler can be shared by every computer
+ * running the same program: a block compiled by one computer is reused by another as long as its source cells are
+ * unchanged there.
+ *
+ * Each computer gets its own {@link IntComp.Backend} from {@link #newBackend()}. When a computer writes into one of
+ * its compiled blocks, the block is dropped and the written cell is treated as self-modifying code from then on, by
+ * every computer sharing the compiler. A modified operand is compiled into a node that reads the operand cell at run
+ * time; a modified opcode is handed to the interpreter and ends its block.
+ *
+ * Against the interpreter with superinstruction fusion, closures win on short-lived computers such as the Day 19
+ * probes, which stop dropping and relinking the block their input is written into, and on Day 9 BOOST in sensor
+ * mode, whose recursive calls and returns run as a few long blocks.
+ */
+class ClosureCompiler {
+    private static final int MAX_BLOCK_INSTRUCTIONS = 64;
+
+    private volatile Block[] shared = new Block[0];
+    /**
+     * Cells some computer wrote into compiled code. Blocks compiled from then on read them at run time.
+     */
+    private volatile boolean[] modified = new boolean[0];
+    private int compiledBlocks = 0;
+
+    IntComp.Backend newBackend() {
+        return new Runner();
+    }
+
+    int compiledBlocks() {
+        return compiledBlocks;
+    }
+
+    private Block compile(final Memory memory, final int start) {
+        final boolean[] dirty = modified;
+        final Block[] table = shared;
+        final Block cached = start < table.length ? table[start] : null;
+        if (cached != null && cached.compiledFrom(memory, dirty)) {
+            return cached;
+        }
+
+        final List<Node> nodes = new ArrayList<>();
+        final List<Integer> weights = new ArrayList<>();
+        final List<Integer> cells = new ArrayList<>();
+        final Set<Integer> entries = new HashSet<>();
+        int instructions = 0;
+        int pc = start;
+        while (instructions < MAX_BLOCK_INSTRUCTIONS && pc < memory.size()) {
+            if (isDirty(dirty, pc)) {
+                nodes.add(interpreted(pc));
+                weights.add(1);
+                break;
+            }
+
+            entries.add(pc);
+            instructions++;
+            final Op op = Op.of(memory.get(pc) % 100);
+            for (int cell = pc; cell <= pc + op.parameters && cell < memory.size(); cell++) {
+                if (!isDirty(dirty, cell)) {
+                    cells.add(cell);
+                }
+            }
+            final int target = jumpTarget(memory, dirty, pc, op);
+            if (target >= 0 && !nodes.isEmpty() && !entries.contains(target) && target < memory.size()) {
+                // Always taken, so it runs as part of the instruction before it and the block goes on at the target
+                weights.set(weights.size() - 1, weights.get(weights.size() - 1) + 1);
+                pc = target;
+                continue;
+            }
+
+            nodes.add(node(memory, dirty, pc, op));
+            weights.add(1);
+            pc += op.parameters + 1;
+            if (op == Op.JIT || op == Op.JIF || op == Op.INPUT || op == Op.HALT) {
+                break;
+            }
+        }
+
+        final int[] baked = cells.stream().mapToInt(Integer::intValue).toArray();
+        final long[] source = new long[baked.length];
+        for (int i = 0; i < baked.length; i++) {
+            source[i] = memory.get(baked[i]);
+        }
+
+        final Block block = new Block(
+            start,
+            nodes.toArray(new Node[0]),
+            weights.stream().mapToInt(Integer::intValue).toArray(),
+            baked,
+            source
+        );
+        share(block);
+        return block;
+    }
+
+    private synchronized void share(final Block block) {
+        Block[] table = shared;
+        if (block.start >= table.length) {
+            table = Arrays.copyOf(table, Math.max(block.start + 1, table.length * 2));
+        }
+        if (table[block.start] == null) {
+            compiledBlocks++;
+        }
+        table[block.start] = block;
+        shared = table;
+    }
+
+    private synchronized void modified(final int cell) {
+        boolean[] cells = modified;
+        if (cell >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(cell + 1, cells.length * 2));
+        }
+        cells[cell] = true;
+        modified = cells;
+    }
+
+    private static boolean isDirty(final boolean[] dirty, final int cell) {
+        return cell < dirty.length && dirty[cell];
+    }
+
+    /**
+     * Returns the target of the jump at {@code pc} if it is always taken to a constant address, and -1 otherwise.
+     */
+    private static int jumpTarget(final Memory memory, final boolean[] dirty, final int pc, final Op op) {
+        if (op != Op.JIT && op != Op.JIF || Op.mode(memory.get(pc), 1) != 1 || Op.mode(memory.get(pc), 2) != 1
+            || isDirty(dirty, pc + 1) || isDirty(dirty, pc + 2)) {
+            return -1;
+        }
+        final long target = memory.get(pc + 2);
+        return (memory.get(pc + 1) != 0) == (op == Op.JIT) && target >= 0 && target <= Integer.MAX_VALUE
+            ? (int) target
+            : -1;
+    }
+
+    private static Node node(final Memory memory, final boolean[] dirty, final int pc, final Op op) {
+        final long instr = memory.get(pc);
+        final int next = pc + op.parameters + 1;
+        final int m1 = (int) (instr / 100 % 10);
+        final int m2 = (int) (instr / 1000 % 10);
+        final int m3 = (int) (instr / 10000 % 10);
+        final Operand a = op.parameters > 0 ? operand(memory, dirty, pc + 1, m1) : null;
+        final Operand b = op.parameters > 1 ? operand(memory, dirty, pc + 2, m2) : null;
+
+        switch (op) {
+            case ADD: {
+                final Target t = target(memory, dirty, pc + 3, m3);
+                return c -> {
+                    t.set(c, IntComp.add(a.get(c), b.get(c), pc));
+                    return next;
+                };
+            }
+            case MUL: {
+                final Target t = target(memory, dirty, pc + 3, m3);
+                return c -> {
+                    t.set(c, IntComp.multiply(a.get(c), b.get(c), pc));
+                    return next;
+                };
+            }
+            case LT: {
+                final Target t = target(memory, dirty, pc + 3, m3);
+                return c -> {
+                    t.set(c, a.get(c) < b.get(c) ? 1 : 0);
+                    return next;
+                };
+            }
+            case EQ: {
+                final Target t = target(memory, dirty, pc + 3, m3);
+                return c -> {
+                    t.set(c, a.get(c) == b.get(c) ? 1 : 0);
+                    return next;
+                };
+            }
+            case INPUT: {
+                final Target t = target(memory, dirty, pc + 1, m1);
+                return c -> {
+                    if (c.device != null) {
+                        c.pos = pc;
+                        t.set(c, c.device.onInput());
+                        return next;
+                    }
+                    if (c.input.isEmpty()) {
+                        c.halted = true;
+                        return pc;
+                    }
+                    t.set(c, c.input.pollLong());
+                    return next;
+                };
+            }
+            case OUTPUT:
+                return c -> {
+                    if (c.device != null) {
+                        c.pos = pc;
+                        c.device.onOutput(a.get(c));
+                    } else {
+                        c.output.offerLong(a.get(c));
+                    }
+                    return next;
+                };
+            case JIT:
+                return c -> a.get(c) != 0 ? (int) b.get(c) : next;
+            case JIF:
+                return c -> a.get(c) == 0 ? (int) b.get(c) : next;
+            case RBASE:
+                return c -> {
+                    c.rbase += (int) a.get(c);
+                    return next;
+                };
+            case HALT:
+            default:
+                return c -> {
+                    c.halted = true;
+                    c.terminated = true;
+                    return pc;
+                };
+        }
+    }
+
+    private static Node interpreted(final int pc) {
+        return c -> {
+            c.pos = pc;
+            c.interpret(1);
+            return c.pos;
+        };
+    }
+
+    private static Operand operand(final Memory memory, final boolean[] dirty, final int cell, final int mode) {
+        if (isDirty(dirty, cell)) {
+            switch (mode) {
+                case 0:
+                    return c -> c.load(c.load(cell));
+                case 1:
+                    return c -> c.load(cell);
+                case 2:
+                    return c -> c.load(c.rbase + c.load(cell));
+            }
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        final long param = memory.get(cell);
+        switch (mode) {
+            case 0:
+                return c -> c.load(param);
+            case 1:
+                return c -> param;
+            case 2:
+                return c -> c.load(c.rbase + param);
+        }
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+
+    private static Target target(final Memory memory, final boolean[] dirty, final int cell, final int mode) {
+        if (isDirty(dirty, cell)) {
+            switch (mode) {
+                case 0:
+                case 1:
+                    return (c, value) -> c.store(c.load(cell), value);
+                case 2:
+                    return (c, value) -> c.store(c.rbase + c.load(cell), value);
+            }
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        final long param = memory.get(cell);
+        switch (mode) {
+            case 0:
+            case 1:
+                return (c, value) -> c.store(param, value);
+            case 2:
+                return (c, value) -> c.store(c.rbase + param, value);
+        }
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+
+    @FunctionalInterface
+    private interface Operand {
+        long get(IntComp comp);
+    }
+
+    @FunctionalInterface
+    private interface Target {
+        void set(IntComp comp, long value);
+    }
+
+    /**
+     * One compiled instruction. Returns the address of the next instruction to execute.
+     */
+    @FunctionalInterface
+    private interface Node {
+        int exec(IntComp comp);
+    }
+
+    /**
+     * A compiled block entered at {@code start}. It covers the cells baked into its nodes, which need not be contiguous
+     * once it follows a jump. Cells written into compiled code before the block was compiled are read at run time and
+     * not covered, and neither is an interpreted instruction that ends the block.
+     */
+    private static class Block {
+        private final int start;
+        private final int first;
+        private final int limit;
+        private final int instructions;
+        private final Node[] nodes;
+        private final int[] weights;
+        private final int[] cells;
+        private final long[] source;
+
+        private Block(
+            final int start,
+            final Node[] nodes,
+            final int[] weights,
+            final int[] cells,
+            final long[] source
+        ) {
+            this.start = start;
+            this.first = Arrays.stream(cells).min().orElse(start);
+            this.limit = Arrays.stream(cells).max().orElse(start) + 1;
+            this.instructions = Arrays.stream(weights).sum();
+            this.nodes = nodes;
+            this.weights = weights;
+            this.cells = cells;
+            this.source = source;
+        }
+
+        boolean covers(final int cell) {
+            if (cell < first || cell >= limit) {
+                return false;
+            }
+            for (final int covered : cells) {
+                if (covered == cell) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * True if the cells baked into the block still hold their values in {@code memory} and none of them has been
+         * written into since.
+         */
+        boolean compiledFrom(final Memory memory, final boolean[] dirty) {
+            if (limit > memory.size()) {
+                return false;
+            }
+            for (int i = 0; i < cells.length; i++) {
+                if (memory.get(cells[i]) != source[i] || isDirty(dirty, cells[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Runs the block and leaves the program counter of {@code comp} at the next instruction. Returns the number
+         * of instructions executed. A node that writes into compiled code ends the block before the jump folded into
+         * it, if any, which the interpreter then runs.
+         */
+        int run(final IntComp comp) {
+            int pc = start;
+            int executed = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                pc = nodes[i].exec(comp);
+                if (comp.codeModified) {
+                    comp.codeModified = false;
+                    executed++;
+                    break;
+                }
+                executed += weights[i];
+            }
+
+            comp.pos = pc;
+            if (comp.halted && !comp.terminated) {
+                executed--;
+            }
+            return executed;
+        }
+    }
+
+    private class Runner implements IntComp.Backend {
+        private Block[] blocks = new Block[0];
+        private int[] coverage = new int[0];
+        private final List<Block> linked = new ArrayList<>();
+
+        @Override
+        public long run(final IntComp comp, final long maxInstructions) {
+            long executed = 0;
+            while (executed < maxInstructions && comp.hasMoreInstructions()) {
+                final Block block = blockAt(comp);
+                if (executed + block.instructions > maxInstructions) {
+                    executed += comp.interpret(1);
+                } else {
+                    executed += block.run(comp);
+                }
+            }
+            return executed;
+        }
+
+        @Override
+        public boolean written(final long address) {
+            if (address >= coverage.length || coverage[(int) address] == 0) {
+                return false;
+            }
+
+            final int cell = (int) address;
+            modified(cell);
+            // Blocks that follow jumps cover cells anywhere in the program, so every linked block is checked
+            for (int i = linked.size() - 1; i >= 0; i--) {
+                final Block block = linked.get(i);
+                if (block.covers(cell)) {
+                    drop(block);
+                }
+            }
+            return true;
+        }
+
+        private Block blockAt(final IntComp comp) {
+            final int pc = comp.pos;
+            if (pc >= blocks.length) {
+                grow(pc + 1);
+            }
+
+            Block block = blocks[pc];
+            if (block == null) {
+                block = compile(comp.memory, pc);
+                if (block.limit > coverage.length) {
+                    grow(block.limit);
+                }
+                blocks[pc] = block;
+                linked.add(block);
+                for (final int cell : block.cells) {
+                    coverage[cell]++;
+                }
+            }
+            return block;
+        }
+
+        private void drop(final Block block) {
+            blocks[block.start] = null;
+            linked.remove(block);
+            for (final int cell : block.cells) {
+                coverage[cell]--;
+            }
+        }
+
+        private void grow(final int minSize) {
+            final int size = Math.max(minSize, blocks.length * 2);
+            blocks = Arrays.copyOf(blocks, size);
+            coverage = Arrays.copyOf(coverage, size);
+        }
+    }
+}
@@ -1,33 +1,16 @@
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.stream.Stream;
 
 class Day11 {
 
     private static final Map<Point, Integer> HULL = new HashMap<>();
 
     public static void main(final String[] args) throws Exception {
-        final IntComp comp = new IntComp(getInstructions(getInput()));
         //Provide it 0 for Part1 of the puzzle, and 1 for Part2
         final Robot robot = new Robot(1);
-
-        while (!comp.terminated) {
-            final int currentColor = robot.inspectHullPanel();
-            comp.addInput(currentColor);
-
-            while (comp.hasMoreInstructions()) {
-                comp.step();
-            }
-            final long newColor = comp.output.poll();
-            final long turnDir = comp.output.poll();
-
-            robot.paint((int) newColor);
-            robot.turn((int) turnDir);
-        }
+        final IntComp comp = ProgramImage.of(getInput()).boot().withDevice(robot);
+        comp.runUntilBlocked();
 
         System.out.println("Unique hull pieces visited: " + HULL.keySet().size());
 
@@ -47,16 +30,35 @@ class Day11 {
 
     }
 
-    private static class Robot {
+    /**
+     * Reads the panel under it on every input, and takes a color followed by a turn from the outputs.
+     */
+    private static class Robot implements IoDevice {
         private int xPos = 0;
         private int yPos = 0;
         private Direction direction = Direction.U;
         private final int startingColor;
+        private boolean painted = false;
 
         private Robot(final int startingColor) {
             this.startingColor = startingColor;
         }
 
+        @Override
+        public long onInput() {
+            return inspectHullPanel();
+        }
+
+        @Override
+        public void onOutput(final long value) {
+            if (painted) {
+                turn((int) value);
+            } else {
+                paint((int) value);
+            }
+            painted = !painted;
+        }
+
         int inspectHullPanel() {
             if (HULL.isEmpty()) {
                 return startingColor;
@@ -121,172 +123,7 @@ class Day11 {
         }
     }
 
-    private static class IntComp {
-        private int pos = 0;
-        private int rbase = 0;
-        private boolean halted = false;
-        private boolean terminated = false;
-        private long[] instructions;
-        private final Queue<Long> input = new ArrayBlockingQueue<>(100);
-        private final Queue<Long> output = new ArrayBlockingQueue<>(100);
-
-        private IntComp(final long[] instructions) {
-            this.instructions = instructions;
-        }
-
-        public boolean hasMoreInstructions() {
-            return pos < instructions.length && !halted && !terminated;
-        }
-
-        public void step() throws Exception {
-            final int instr = (int) instructions[pos];
-            final Op opCode = Op.of(instr % 100);
-            final long[] parameters = Arrays.copyOfRange(instructions, pos + 1, pos + 1 + opCode.parameters);
-            final int[] paramModes = parseParamModes(instr, opCode.parameters);
-
-            doOp(opCode, parameters, paramModes);
-        }
-
-        void addInput(final long inp) {
-            this.input.add(inp);
-            this.halted = false;
-        }
-
-        private void doOp(
-            final Op opCode,
-            final long[] params,
-            final int[] modes
-        ) throws Exception {
-            if (Op.ADD == opCode) {
-                final long result = read(params[0], modes[0]) + read(params[1], modes[1]);
-                write(params[2], modes[2], result);
-            } else if (Op.MUL == opCode) {
-                final long result = read(params[0], modes[0]) * read(params[1], modes[1]);
-                write(params[2], modes[2], result);
-            } else if (Op.INPUT == opCode) {
-                final Long input = this.input.poll();
-                if (input == null) {
-                    halted = true;
-                } else {
-                    write(params[0], modes[0], input);
-                }
-            } else if (Op.OUTPUT == opCode) {
-                final long output = read(params[0], modes[0]);
-                this.output.add(output);
-            } else if (Op.JIT == opCode) {
-                final boolean jump = read(params[0], modes[0]) > 0;
-                if (jump) {
-                    pos = (int) (read(params[1], modes[1]) - params.length - 1);
-                }
-            } else if (Op.JIF == opCode) {
-                final boolean jump = read(params[0], modes[0]) == 0;
-                if (jump) {
-                    pos = (int) (read(params[1], modes[1]) - params.length - 1);
-                }
-            } else if (Op.LT == opCode) {
-                final int bit = read(params[0], modes[0]) < read(params[1], modes[1]) ? 1 : 0;
-                write(params[2], modes[2], bit);
-            } else if (Op.EQ == opCode) {
-                final int bit = read(params[0], modes[0]) == read(params[1], modes[1]) ? 1 : 0;
-                write(params[2], modes[2], bit);
-            } else if (Op.RBASE == opCode) {
-                rbase += (int) read(params[0], modes[0]);
-            } else if (Op.HALT == opCode) {
-                halted = true;
-                terminated = true;
-            }
-
-            if (!halted) {
-                pos += params.length + 1;
-            }
-        }
-
-        private int[] parseParamModes(final int instr, final int parameters) {
-            final int[] modes = new int[parameters];
-            final int instrParams = instr / 100;
-            final char[] instrC = String.valueOf(instrParams).toCharArray();
-
-            for (int i = 0; i < parameters; i++) {
-                final int rev = instrC.length - i - 1;
-                if (rev >= 0) {
-                    modes[i] = Character.getNumericValue(instrC[rev]);
-                } else {
-                    modes[i] = 0;
-                }
-            }
-            return modes;
-        }
-
-        long read(final long pos, final int mode) {
-            switch (mode) {
-                case 0:
-                    if (pos >= instructions.length) {
-                        instructions = Arrays.copyOf(instructions, (int) (pos + 1));
-                    }
-                    return instructions[(int) pos];
-                case 1:
-                    return pos;
-                case 2:
-                    return instructions[(int) (pos + rbase)];
-            }
-            throw new IllegalArgumentException("Unknown mode: " + mode);
-        }
-
-        void write(final long pos, final int mode, final long inp) {
-            switch (mode) {
-                case 0:
-                case 1:
-                    expandIfNeeded(pos);
-                    instructions[(int) pos] = inp;
-                    break;
-                case 2:
-                    expandIfNeeded(pos + rbase);
-                    instructions[(int) (pos + rbase)] = inp;
-                    break;
-            }
-        }
-
-        private void expandIfNeeded(final long desiredPos) {
-            if (instructions.length - 1 < desiredPos) {
-                instructions = Arrays.copyOf(instructions, (int) (desiredPos + 1));
-            }
-        }
-    }
-
-    private enum Op {
-        ADD(1, 3),
-        MUL(2, 3),
-        INPUT(3, 1),
-        OUTPUT(4, 1),
-        JIT(5, 2),
-        JIF(6, 2),
-        LT(7, 3),
-        EQ(8, 3),
-        RBASE(9, 1),
-        HALT(99, 0);
-
-        private final int opCode;
-        private final int parameters;
-
-        Op(final int opCode, final int parameters) {
-            this.opCode = opCode;
-            this.parameters = parameters;
-        }
-
-        static Op of(final long opCode) {
-            return Stream.of(values()).filter(o -> o.opCode == opCode)
-                .findFirst()
-                .orElse(HALT);
-        }
-    }
-
-    private static long[] getInstructions(final String input) {
-        return Arrays.stream(input.split(","))
-            .mapToLong(Long::parseLong)
-            .toArray();
-    }
-
-    private static String getInput() {
+    static String getInput() {
         return "3,8,1005,8,336,1106,0,11,0,0,0,104,1,104,0,3,8,102,-1,8,10,1001,10,1,10,4,10,108,1,8,10,4,10,101,0,8,"
             + "28,1006,0,36,1,2,5,10,1006,0,57,1006,0,68,3,8,102,-1,8,10,1001,10,1,10,4,10,108,0,8,10,4,10,1002,8,1,"
             + "63,2,6,20,10,1,106,7,10,2,9,0,10,3,8,102,-1,8,10,101,1,10,10,4,10,108,1,8,10,4,10,102,1,8,97,1006,0,"
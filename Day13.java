@@ -1,33 +1,100 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.stream.Stream;
+import java.util.Map;
 
 class Day13 {
 
+    /**
+     * System property naming the file the game is checkpointed to. Without it, the game is never checkpointed.
+     */
+    private static final String CHECKPOINT_PROPERTY = "day13.checkpoint";
+    private static final int CHECKPOINT_FRAMES = 50;
+
     public static void main(final String[] args) throws Exception {
-        final long[] instructions = getInstructions(getInput());
+        final long[] instructions = IntComp.getInstructions(getInput());
         instructions[0] = 2; // Part 2
-        final IntComp comp = new IntComp(instructions);
+        final String checkpointPath = System.getProperty(CHECKPOINT_PROPERTY);
+        final Path checkpoint = checkpointPath == null ? null : Paths.get(checkpointPath);
+        final TieredCompiler tiered = new TieredCompiler();
+        // Resume an interrupted game from its last checkpoint instead of starting over
+        final IntComp comp = checkpoint != null && Files.exists(checkpoint)
+            ? Checkpoint.restore(instructions, checkpoint)
+            : new IntComp(instructions);
+        comp.withBackend(tiered.newBackend()).withDevice(new Joystick(comp, instructions, checkpoint));
+        comp.runUntilBlocked();
+        if (checkpoint != null) {
+            Files.deleteIfExists(checkpoint);
+        }
+
+        for (final TieredCompiler.Transition transition : tiered.transitions()) {
+            System.out.println(transition);
+        }
+    }
+
+    /**
+     * Collects the screen from the outputs and moves the paddle towards the ball whenever the game asks for input.
+     */
+    private static class Joystick implements IoDevice {
+        private final IntComp comp;
+        private final long[] instructions;
+        private final Path checkpoint;
+        private List<Long> outputs = new ArrayList<>();
+        private int frames = 0;
+
+        private Joystick(final IntComp comp, final long[] instructions, final Path checkpoint) {
+            this.comp = comp;
+            this.instructions = instructions;
+            this.checkpoint = checkpoint;
+            // A resumed game starts with everything drawn before the checkpoint
+            outputs.addAll(comp.output);
+            comp.output.clear();
+        }
 
-        while (!comp.terminated) {
-            while (comp.hasMoreInstructions()) {
-                comp.step();
+        @Override
+        public long onInput() {
+            final GameState gameState = drawScreen(outputs);
+            if (checkpoint != null && ++frames % CHECKPOINT_FRAMES == 0) {
+                checkpoint();
+            }
+
+            try {
+                Thread.sleep(100);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            final GameState gameState = drawScreen(comp.output);
 
             if (gameState.ballX > gameState.padX) {
                 // Move right
-                comp.addInput(1);
+                return 1;
             } else if (gameState.ballX < gameState.padX) {
-                comp.addInput(-1);
-            } else {
-                comp.addInput(0);
+                return -1;
             }
+            return 0;
+        }
 
-            Thread.sleep(100);
+        @Override
+        public void onOutput(final long value) {
+            outputs.add(value);
+        }
+
+        private void checkpoint() {
+            // The screen as drawn so far goes into the checkpoint as pending output, so a resumed game redraws it
+            outputs = screen(outputs);
+            final long[] pending = new long[outputs.size()];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = outputs.get(i);
+            }
+            try {
+                Checkpoint.save(comp, instructions, pending, checkpoint);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 
@@ -41,6 +108,26 @@ class Day13 {
         }
     }
 
+    /**
+     * Collapses the outputs into the last tile drawn at each position and the last score, in the order they were
+     * drawn, which draws the same screen.
+     */
+    private static List<Long> screen(final List<Long> outputs) {
+        final Map<List<Long>, Long> tiles = new LinkedHashMap<>();
+        for (int i = 0; i + 2 < outputs.size(); i += 3) {
+            final List<Long> position = List.of(outputs.get(i), outputs.get(i + 1));
+            tiles.remove(position);
+            tiles.put(position, outputs.get(i + 2));
+        }
+
+        final List<Long> screen = new ArrayList<>();
+        for (final Map.Entry<List<Long>, Long> tile : tiles.entrySet()) {
+            screen.addAll(tile.getKey());
+            screen.add(tile.getValue());
+        }
+        return screen;
+    }
+
     private static GameState drawScreen(final List<Long> outputs) {
         final List<Pixel> pixels = new ArrayList<>();
         String segmentDisplay = "";
@@ -115,172 +202,7 @@ class Day13 {
         }
     }
 
-    private static class IntComp {
-        private int pos = 0;
-        private int rbase = 0;
-        private boolean halted = false;
-        private boolean terminated = false;
-        private long[] instructions;
-        private final Queue<Long> input = new ArrayBlockingQueue<>(100);
-        private final List<Long> output = new ArrayList<>();
-
-        private IntComp(final long[] instructions) {
-            this.instructions = instructions;
-        }
-
-        public boolean hasMoreInstructions() {
-            return pos < instructions.length && !halted && !terminated;
-        }
-
-        public void step() throws Exception {
-            final int instr = (int) instructions[pos];
-            final Op opCode = Op.of(instr % 100);
-            final long[] parameters = Arrays.copyOfRange(instructions, pos + 1, pos + 1 + opCode.parameters);
-            final int[] paramModes = parseParamModes(instr, opCode.parameters);
-
-            doOp(opCode, parameters, paramModes);
-        }
-
-        void addInput(final long inp) {
-            this.input.add(inp);
-            this.halted = false;
-        }
-
-        private void doOp(
-            final Op opCode,
-            final long[] params,
-            final int[] modes
-        ) throws Exception {
-            if (Op.ADD == opCode) {
-                final long result = read(params[0], modes[0]) + read(params[1], modes[1]);
-                write(params[2], modes[2], result);
-            } else if (Op.MUL == opCode) {
-                final long result = read(params[0], modes[0]) * read(params[1], modes[1]);
-                write(params[2], modes[2], result);
-            } else if (Op.INPUT == opCode) {
-                final Long input = this.input.poll();
-                if (input == null) {
-                    halted = true;
-                } else {
-                    write(params[0], modes[0], input);
-                }
-            } else if (Op.OUTPUT == opCode) {
-                final long output = read(params[0], modes[0]);
-                this.output.add(output);
-            } else if (Op.JIT == opCode) {
-                final boolean jump = read(params[0], modes[0]) > 0;
-                if (jump) {
-                    pos = (int) (read(params[1], modes[1]) - params.length - 1);
-                }
-            } else if (Op.JIF == opCode) {
-                final boolean jump = read(params[0], modes[0]) == 0;
-                if (jump) {
-                    pos = (int) (read(params[1], modes[1]) - params.length - 1);
-                }
-            } else if (Op.LT == opCode) {
-                final int bit = read(params[0], modes[0]) < read(params[1], modes[1]) ? 1 : 0;
-                write(params[2], modes[2], bit);
-            } else if (Op.EQ == opCode) {
-                final int bit = read(params[0], modes[0]) == read(params[1], modes[1]) ? 1 : 0;
-                write(params[2], modes[2], bit);
-            } else if (Op.RBASE == opCode) {
-                rbase += (int) read(params[0], modes[0]);
-            } else if (Op.HALT == opCode) {
-                halted = true;
-                terminated = true;
-            }
-
-            if (!halted) {
-                pos += params.length + 1;
-            }
-        }
-
-        private int[] parseParamModes(final int instr, final int parameters) {
-            final int[] modes = new int[parameters];
-            final int instrParams = instr / 100;
-            final char[] instrC = String.valueOf(instrParams).toCharArray();
-
-            for (int i = 0; i < parameters; i++) {
-                final int rev = instrC.length - i - 1;
-                if (rev >= 0) {
-                    modes[i] = Character.getNumericValue(instrC[rev]);
-                } else {
-                    modes[i] = 0;
-                }
-            }
-            return modes;
-        }
-
-        long read(final long pos, final int mode) {
-            switch (mode) {
-                case 0:
-                    if (pos >= instructions.length) {
-                        instructions = Arrays.copyOf(instructions, (int) (pos + 1));
-                    }
-                    return instructions[(int) pos];
-                case 1:
-                    return pos;
-                case 2:
-                    return instructions[(int) (pos + rbase)];
-            }
-            throw new IllegalArgumentException("Unknown mode: " + mode);
-        }
-
-        void write(final long pos, final int mode, final long inp) {
-            switch (mode) {
-                case 0:
-                case 1:
-                    expandIfNeeded(pos);
-                    instructions[(int) pos] = inp;
-                    break;
-                case 2:
-                    expandIfNeeded(pos + rbase);
-                    instructions[(int) (pos + rbase)] = inp;
-                    break;
-            }
-        }
-
-        private void expandIfNeeded(final long desiredPos) {
-            if (instructions.length - 1 < desiredPos) {
-                instructions = Arrays.copyOf(instructions, (int) (desiredPos + 1));
-            }
-        }
-    }
-
-    private enum Op {
-        ADD(1, 3),
-        MUL(2, 3),
-        INPUT(3, 1),
-        OUTPUT(4, 1),
-        JIT(5, 2),
-        JIF(6, 2),
-        LT(7, 3),
-        EQ(8, 3),
-        RBASE(9, 1),
-        HALT(99, 0);
-
-        private final int opCode;
-        private final int parameters;
-
-        Op(final int opCode, final int parameters) {
-            this.opCode = opCode;
-            this.parameters = parameters;
-        }
-
-        static Op of(final long opCode) {
-            return Stream.of(values()).filter(o -> o.opCode == opCode)
-                .findFirst()
-                .orElse(HALT);
-        }
-    }
-
-    private static long[] getInstructions(final String input) {
-        return Arrays.stream(input.split(","))
-            .mapToLong(Long::parseLong)
-            .toArray();
-    }
-
-    private static String getInput() {
+    static String getInput() {
         return "1,380,379,385,1008,2249,380030,381,1005,381,12,99,109,2250,1102,1,0,383,1101,0,0,382,20101,0,382,1,"
             + "20101,0,383,2,21102,1,37,0,1106,0,578,4,382,4,383,204,1,1001,382,1,382,1007,382,35,381,1005,381,22,"
             + "1001,383,1,383,1007,383,23,381,1005,381,18,1006,385,69,99,104,-1,104,0,4,386,3,384,1007,384,0,381,"
@@ -1,184 +1,13 @@
 import java.util.Arrays;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.stream.Stream;
 
 class Day9 {
 
     public static void main(final String[] args) throws Exception {
-        final IntComp comp = new IntComp(getInstructions(getInput()));
+        final IntComp comp = ProgramImage.of(getInput()).boot();
 //        comp.addInput(1); //P1
 //        comp.addInput(2); //P2
-        while (comp.hasMoreInstructions()) {
-            comp.step();
-        }
 
-        System.out.println(comp.output);
-    }
-
-    private static class IntComp {
-        private int pos = 0;
-        private int rbase = 0;
-        private boolean halted = false;
-        private boolean terminated = false;
-        private long[] instructions;
-        private final Queue<Long> input = new ArrayBlockingQueue<>(100);
-        private final Queue<Long> output = new ArrayBlockingQueue<>(100);
-
-        private IntComp(final long[] instructions) {
-            this.instructions = instructions;
-        }
-
-        public boolean hasMoreInstructions() {
-            return pos < instructions.length && !halted && !terminated;
-        }
-
-        public void step() throws Exception {
-            final int instr = (int) instructions[pos];
-            final Op opCode = Op.of(instr % 100);
-            final long[] parameters = Arrays.copyOfRange(instructions, pos + 1, pos + 1 + opCode.parameters);
-            final int[] paramModes = parseParamModes(instr, opCode.parameters);
-
-            doOp(opCode, parameters, paramModes);
-        }
-
-        void addInput(final long inp) {
-            this.input.add(inp);
-            this.halted = false;
-        }
-
-        private void doOp(
-            final Op opCode,
-            final long[] params,
-            final int[] modes
-        ) throws Exception {
-            if (Op.ADD == opCode) {
-                final long result = read(params[0], modes[0]) + read(params[1], modes[1]);
-                write(params[2], modes[2], result);
-            } else if (Op.MUL == opCode) {
-                final long result = read(params[0], modes[0]) * read(params[1], modes[1]);
-                write(params[2], modes[2], result);
-            } else if (Op.INPUT == opCode) {
-                final Long input = this.input.poll();
-                if (input == null) {
-                    halted = true;
-                } else {
-                    write(params[0], modes[0], input);
-                }
-            } else if (Op.OUTPUT == opCode) {
-                final long output = read(params[0], modes[0]);
-                this.output.add(output);
-            } else if (Op.JIT == opCode) {
-                final boolean jump = read(params[0], modes[0]) > 0;
-                if (jump) {
-                    pos = (int) (read(params[1], modes[1]) - params.length - 1);
-                }
-            } else if (Op.JIF == opCode) {
-                final boolean jump = read(params[0], modes[0]) == 0;
-                if (jump) {
-                    pos = (int) (read(params[1], modes[1]) - params.length - 1);
-                }
-            } else if (Op.LT == opCode) {
-                final int bit = read(params[0], modes[0]) < read(params[1], modes[1]) ? 1 : 0;
-                write(params[2], modes[2], bit);
-            } else if (Op.EQ == opCode) {
-                final int bit = read(params[0], modes[0]) == read(params[1], modes[1]) ? 1 : 0;
-                write(params[2], modes[2], bit);
-            } else if (Op.RBASE == opCode) {
-                rbase += (int) read(params[0], modes[0]);
-            } else if (Op.HALT == opCode) {
-                halted = true;
-                terminated = true;
-            }
-
-            if (!halted) {
-                pos += params.length + 1;
-            }
-        }
-
-        private int[] parseParamModes(final int instr, final int parameters) {
-            final int[] modes = new int[parameters];
-            final int instrParams = instr / 100;
-            final char[] instrC = String.valueOf(instrParams).toCharArray();
-
-            for (int i = 0; i < parameters; i++) {
-                final int rev = instrC.length - i - 1;
-                if (rev >= 0) {
-                    modes[i] = Character.getNumericValue(instrC[rev]);
-                } else {
-                    modes[i] = 0;
-                }
-            }
-            return modes;
-        }
-
-        long read(final long pos, final int mode) {
-            switch (mode) {
-                case 0:
-                    if (pos >= instructions.length) {
-                        instructions = Arrays.copyOf(instructions, (int) (pos + 1));
-                    }
-                    return instructions[(int) pos];
-                case 1:
-                    return pos;
-                case 2:
-                    return instructions[(int) (pos + rbase)];
-            }
-            throw new IllegalArgumentException("Unknown mode: " + mode);
-        }
-
-        void write(final long pos, final int mode, final long inp) {
-            switch (mode) {
-                case 0:
-                case 1:
-                    expandIfNeeded(pos);
-                    instructions[(int) pos] = inp;
-                    break;
-                case 2:
-                    expandIfNeeded(pos + rbase);
-                    instructions[(int) (pos + rbase)] = inp;
-                    break;
-            }
-        }
-
-        private void expandIfNeeded(final long desiredPos) {
-            if (instructions.length - 1 < desiredPos) {
-                instructions = Arrays.copyOf(instructions, (int) (desiredPos + 1));
-            }
-        }
-    }
-
-    private enum Op {
-        ADD(1, 3),
-        MUL(2, 3),
-        INPUT(3, 1),
-        OUTPUT(4, 1),
-        JIT(5, 2),
-        JIF(6, 2),
-        LT(7, 3),
-        EQ(8, 3),
-        RBASE(9, 1),
-        HALT(99, 0);
-
-        private final int opCode;
-        private final int parameters;
-
-        Op(final int opCode, final int parameters) {
-            this.opCode = opCode;
-            this.parameters = parameters;
-        }
-
-        static Op of(final long opCode) {
-            return Stream.of(values()).filter(o -> o.opCode == opCode)
-                .findFirst()
-                .orElse(HALT);
-        }
-    }
-
-    private static long[] getInstructions(final String input) {
-        return Arrays.stream(input.split(","))
-            .mapToLong(Long::parseLong)
-            .toArray();
+        System.out.println(Arrays.toString(comp.outputStream().toArray()));
     }
 
     private static String getTestInputP1() {
@@ -191,7 +20,7 @@ class Day9 {
             + "53,1001,56,-1,56,1005,56,6,99,0,0,0,0,10";
     }
 
-    private static String getInput() {
+    static String getInput() {
         return "1102,34463338,34463338,63,1007,63,34463338,63,1005,63,53,1101,0,3,1000,109,988,209,12,9,1000,209,6,"
             + "209,3,203,0,1008,1000,1,63,1005,63,65,1008,1000,2,63,1005,63,904,1008,1000,0,63,1005,63,58,4,25,104,0,"
             + "99,4,0,104,0,99,4,17,104,0,99,0,0,1102,32,1,1016,1101,38,0,1012,1102,1,693,1022,1102,1,27,1007,1101,0,"
@@ -0,0 +1,304 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Side table of decoded Intcode instructions, keyed by program counter.
+ *
+ * An entry holds the opcode, the packed parameter modes (4 bits per parameter) and the raw operand cells of the
+ * instruction starting at that address. Entries are decoded lazily the first time the address is executed and stay
+ * valid until one of the cells they were decoded from is written to. Every cell keeps a count of how many decoded
+ * entries cover it, so a write to plain data costs one array lookup, and a write into code only drops the (at most
+ * four) entries that actually overlap the written cell.
+ *
+ * Each entry also records the {@link Fusion} starting at its address, worked out on first execution by decoding the
+ * instructions that follow it. Dropping an entry drops the fusions of every earlier entry that reaches into it. How
+ * often each fusion ran is counted in {@link #fired}.
+ *
+ * The tables are split into chunks of {@value #CHUNK_SIZE} addresses, like the pages of {@link Memory}, so that
+ * {@link #share(Memory)} can hand the decoded entries to a forked computer copy-on-write. Both caches use the same
+ * chunks until either side decodes, fuses or drops an entry in one of them, and only then copies that chunk. A fork
+ * that runs code decoded before it pays for the chunks of the code cells it writes, and nothing for writes to data.
+ */
+class DecodeCache {
+    private static final int MAX_PARAMETERS = 3;
+    /**
+     * How far before its last instruction a fusion can start: two instructions with three parameters each.
+     */
+    private static final int MAX_FUSION_REACH = 2 * (MAX_PARAMETERS + 1);
+    private static final int CHUNK_BITS = 4;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /**
+     * How much of memory is analyzed for instructions before the first share.
+     */
+    private static final int MAX_WARMED_CELLS = 1 << 16;
+
+    final long[] fired = new long[Fusion.values().length];
+    private Op[][] ops;
+    private int[][] modes;
+    private long[][] args;
+    private Fusion[][] fusions;
+    private byte[][] coverage;
+    private boolean[] owned;
+    private final boolean fuse;
+    private boolean shared = false;
+    private boolean warmed = false;
+
+    private DecodeCache(final DecodeCache original) {
+        fuse = original.fuse;
+        ops = original.ops;
+        modes = original.modes;
+        args = original.args;
+        fusions = original.fusions;
+        coverage = original.coverage;
+        owned = original.owned;
+        warmed = original.warmed;
+        shared = true;
+    }
+
+    DecodeCache(final int size, final boolean fuse) {
+        this.fuse = fuse;
+        final int chunks = (size + MAX_PARAMETERS + CHUNK_MASK) >>> CHUNK_BITS;
+        ops = new Op[chunks][];
+        modes = new int[chunks][];
+        args = new long[chunks][];
+        fusions = new Fusion[chunks][];
+        coverage = new byte[chunks][];
+        owned = new boolean[chunks];
+    }
+
+    boolean isDecoded(final int pc) {
+        final int chunk = pc >>> CHUNK_BITS;
+        return chunk < ops.length && ops[chunk] != null && ops[chunk][pc & CHUNK_MASK] != null;
+    }
+
+    /**
+     * Opcode of the instruction decoded at {@code pc}.
+     */
+    Op op(final int pc) {
+        return ops[pc >>> CHUNK_BITS][pc & CHUNK_MASK];
+    }
+
+    /**
+     * Parameter modes of the instruction decoded at {@code pc}, 4 bits per parameter.
+     */
+    int modes(final int pc) {
+        return modes[pc >>> CHUNK_BITS][pc & CHUNK_MASK];
+    }
+
+    /**
+     * Raw operand cell {@code parameter} of the instruction decoded at {@code pc}, counting from 0.
+     */
+    long arg(final int pc, final int parameter) {
+        return args[pc >>> CHUNK_BITS][(pc & CHUNK_MASK) * MAX_PARAMETERS + parameter];
+    }
+
+    /**
+     * Fusion starting at the instruction decoded at {@code pc}, or null if it has not been worked out yet.
+     */
+    Fusion fusion(final int pc) {
+        return fusions[pc >>> CHUNK_BITS][pc & CHUNK_MASK];
+    }
+
+    /**
+     * Decodes the instruction at {@code pc} from {@code memory}.
+     */
+    void decode(final Memory memory, final int pc) {
+        ensureCapacity(pc + MAX_PARAMETERS + 1);
+
+        final long instr = memory.get(pc);
+        final Op op = Op.of(instr % 100);
+        final int chunk = own(pc);
+        final int index = pc & CHUNK_MASK;
+        final int slot = index * MAX_PARAMETERS;
+        for (int i = 0; i < op.parameters; i++) {
+            args[chunk][slot + i] = memory.get(pc + 1 + i);
+        }
+
+        modes[chunk][index] =
+            (int) (instr / 100 % 10) | (int) (instr / 1000 % 10) << 4 | (int) (instr / 10000 % 10) << 8;
+        ops[chunk][index] = op;
+        for (int cell = pc; cell <= pc + op.parameters; cell++) {
+            final int cellChunk = own(cell);
+            coverage[cellChunk][cell & CHUNK_MASK]++;
+        }
+    }
+
+    /**
+     * Works out the fusion starting at the decoded instruction at {@code pc}, decoding the instructions after it as
+     * needed.
+     */
+    Fusion fuse(final Memory memory, final int pc) {
+        final Op first = op(pc);
+        Fusion fusion = Fusion.NONE;
+        if (fuse && Fusion.fallsThrough(first)) {
+            final int next = pc + first.parameters + 1;
+            final Op second = decodedAt(memory, next);
+            final Op third = second != null && Fusion.fallsThrough(second)
+                ? decodedAt(memory, next + second.parameters + 1)
+                : null;
+            fusion = Fusion.of(first, second, third);
+        }
+        final int chunk = own(pc);
+        fusions[chunk][pc & CHUNK_MASK] = fusion;
+        return fusion;
+    }
+
+    private Op decodedAt(final Memory memory, final int pc) {
+        if (pc >= memory.size()) {
+            return null;
+        }
+        if (!isDecoded(pc)) {
+            decode(memory, pc);
+        }
+        return op(pc);
+    }
+
+    /**
+     * Describes how often each fusion ran, and how many dispatches that saved.
+     */
+    String report() {
+        final StringBuilder report = new StringBuilder();
+        long saved = 0;
+        for (final Fusion fusion : Fusion.values()) {
+            if (fusion != Fusion.NONE && fired[fusion.ordinal()] > 0) {
+                report.append(fusion).append(' ').append(fired[fusion.ordinal()]).append(", ");
+                saved += fired[fusion.ordinal()] * (fusion.instructions - 1);
+            }
+        }
+        return report.append(saved).append(" dispatches saved").toString();
+    }
+
+    /**
+     * Must be called after every write to memory. Drops the decoded entries that cover {@code address}.
+     */
+    void written(final long address) {
+        final long chunk = address >>> CHUNK_BITS;
+        if (chunk >= coverage.length || coverage[(int) chunk] == null
+            || coverage[(int) chunk][(int) address & CHUNK_MASK] == 0) {
+            return;
+        }
+
+        final int cell = (int) address;
+        for (int pc = Math.max(0, cell - MAX_PARAMETERS); pc <= cell; pc++) {
+            if (isDecoded(pc)) {
+                final Op op = op(pc);
+                if (pc + op.parameters >= cell) {
+                    invalidate(pc, op);
+                }
+            }
+        }
+    }
+
+    private void invalidate(final int pc, final Op op) {
+        final int chunk = own(pc);
+        ops[chunk][pc & CHUNK_MASK] = null;
+        for (int cell = pc; cell <= pc + op.parameters; cell++) {
+            final int cellChunk = own(cell);
+            coverage[cellChunk][cell & CHUNK_MASK]--;
+        }
+        for (int start = Math.max(0, pc - MAX_FUSION_REACH); start <= pc; start++) {
+            final Fusion[] starts = fusions[start >>> CHUNK_BITS];
+            if (starts != null && starts[start & CHUNK_MASK] != null) {
+                final int startChunk = own(start);
+                fusions[startChunk][start & CHUNK_MASK] = null;
+            }
+        }
+    }
+
+    /**
+     * Returns a cache for a fork of the computer that owns this one, holding the same entries and sharing their
+     * chunks copy-on-write. The first share decodes and fuses every instruction {@link ProgramAnalysis} finds in
+     * {@code memory}, so that forks rarely have to decode anything themselves.
+     */
+    DecodeCache share(final Memory memory) {
+        if (!warmed) {
+            final ProgramAnalysis analysis = ProgramAnalysis.analyze(memory.toArray(MAX_WARMED_CELLS));
+            for (int pc = 0; pc < analysis.length(); pc++) {
+                if (analysis.isInstruction(pc)) {
+                    warm(memory, pc);
+                }
+            }
+            warmed = true;
+        }
+        shared = true;
+        return new DecodeCache(this);
+    }
+
+    /**
+     * Decodes and fuses every instruction of {@code blocks}, as found by an earlier analysis of {@code memory}, so that
+     * {@link #share(Memory)} does not analyze it again.
+     */
+    void warm(final Memory memory, final List<ProgramAnalysis.Block> blocks) {
+        for (final ProgramAnalysis.Block block : blocks) {
+            int pc = block.start;
+            for (int i = 0; i < block.instructions && pc >= 0 && pc < block.end && pc < memory.size(); i++) {
+                warm(memory, pc);
+                pc += op(pc).parameters + 1;
+            }
+        }
+        warmed = true;
+    }
+
+    private void warm(final Memory memory, final int pc) {
+        if (!isDecoded(pc)) {
+            decode(memory, pc);
+        }
+        if (fusion(pc) == null) {
+            fuse(memory, pc);
+        }
+    }
+
+    /**
+     * Returns the chunk holding {@code address}, owned by this cache. Allocates the chunk if there is none. May replace
+     * the tables, so callers must not index a table they read before the call.
+     */
+    private int own(final int address) {
+        if (shared) {
+            ops = ops.clone();
+            modes = modes.clone();
+            args = args.clone();
+            fusions = fusions.clone();
+            coverage = coverage.clone();
+            owned = new boolean[ops.length];
+            shared = false;
+        }
+
+        final int chunk = address >>> CHUNK_BITS;
+        if (!owned[chunk]) {
+            if (ops[chunk] == null) {
+                ops[chunk] = new Op[CHUNK_SIZE];
+                modes[chunk] = new int[CHUNK_SIZE];
+                args[chunk] = new long[CHUNK_SIZE * MAX_PARAMETERS];
+                fusions[chunk] = new Fusion[CHUNK_SIZE];
+                coverage[chunk] = new byte[CHUNK_SIZE];
+            } else {
+                ops[chunk] = ops[chunk].clone();
+                modes[chunk] = modes[chunk].clone();
+                args[chunk] = args[chunk].clone();
+                fusions[chunk] = fusions[chunk].clone();
+                coverage[chunk] = coverage[chunk].clone();
+            }
+            owned[chunk] = true;
+        }
+        return chunk;
+    }
+
+    /**
+     * Grows the tables to cover the cells below {@code size}.
+     */
+    private void ensureCapacity(final int size) {
+        final int chunks = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        if (chunks <= ops.length) {
+            return;
+        }
+
+        final int newLength = Math.max(chunks, ops.length * 2);
+        ops = Arrays.copyOf(ops, newLength);
+        modes = Arrays.copyOf(modes, newLength);
+        args = Arrays.copyOf(args, newLength);
+        fusions = Arrays.copyOf(fusions, newLength);
+        coverage = Arrays.copyOf(coverage, newLength);
+        owned = Arrays.copyOf(owned, newLength);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Superinstructions: runs of adjacent Intcode instructions that the interpreter executes with a single dispatch.
+ *
+ * The set is picked from the instruction pairs that dominate the traces of the Intcode days. Arithmetic (which here
+ * includes the comparisons, since they also take two operands and a target) follows arithmetic in long unrolled
+ * stretches, a comparison is followed by the branch that tests it, a call pushes its return address and jumps, and a
+ * function adjusts the relative base before its first computation or before returning. Input and output are never
+ * fused, so devices and channels see exactly the same interleaving as without fusion.
+ */
+enum Fusion {
+    /**
+     * Not fused: the instruction runs on its own.
+     */
+    NONE(1),
+    ARITH_ARITH_ARITH(3),
+    ARITH_ARITH(2),
+    ARITH_BRANCH(2),
+    RBASE_ARITH(2),
+    RBASE_BRANCH(2);
+
+    final int instructions;
+
+    Fusion(final int instructions) {
+        this.instructions = instructions;
+    }
+
+    /**
+     * Returns the fusion for an instruction {@code first} followed by {@code second} and {@code third}. Only
+     * {@code first} is required; the others may be null if they are not known.
+     */
+    static Fusion of(final Op first, final Op second, final Op third) {
+        if (second == null) {
+            return NONE;
+        }
+        if (isArith(first)) {
+            if (isArith(second)) {
+                return isArith(third) ? ARITH_ARITH_ARITH : ARITH_ARITH;
+            }
+            return isBranch(second) ? ARITH_BRANCH : NONE;
+        }
+        if (first == Op.RBASE) {
+            if (isArith(second)) {
+                return RBASE_ARITH;
+            }
+            return isBranch(second) ? RBASE_BRANCH : NONE;
+        }
+        return NONE;
+    }
+
+    /**
+     * True if execution always continues with the next instruction after {@code op}, so it may start a fusion.
+     */
+    static boolean fallsThrough(final Op op) {
+        return isArith(op) || op == Op.RBASE;
+    }
+
+    static boolean isArith(final Op op) {
+        return op == Op.ADD || op == Op.MUL || op == Op.LT || op == Op.EQ;
+    }
+
+    static boolean isBranch(final Op op) {
+        return op == Op.JIT || op == Op.JIF;
+    }
+}
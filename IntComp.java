@@ -0,0 +1,730 @@
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The Intcode computer shared by every day that runs an Intcode program.
+ *
+ * Input is taken from the {@code input} channel. When the program asks for input and the channel is empty the
+ * computer halts (without terminating) until more input is added. Output is appended to the {@code output}
+ * channel. Both channels can be handed in from the outside, so computers can be chained by sharing channels.
+ * Alternatively an {@link IoDevice} can be attached with {@link #withDevice(IoDevice)}; it is then called directly by
+ * every input and output instruction and the channels are not used.
+ *
+ * Memory is a sparse, paged {@link Memory}, so programs can use addresses far past the end of their image. Instructions
+ * are decoded once into a {@link DecodeCache}. Memory must therefore only be changed through
+ * {@link #store(long, long)} once the computer has started running.
+ *
+ * By default every instruction goes through the interpreter loop in {@link #interpret(long)}. A {@link Backend} can
+ * be attached with {@link #withBackend(Backend)} to execute the program some other way. The interpreter runs common
+ * instruction sequences as {@link Fusion superinstructions} unless turned off with {@link #withFusion(boolean)}. A
+ * {@link Profiler} attached with {@link #withProfiler(Profiler)} sees every instruction and memory access.
+ * {@link #withLoopDetection()} makes a computer that gets stuck in a cycle fail instead of running forever.
+ *
+ * Additions and multiplications are checked for overflow. The first result that does not fit in 64 bits switches the
+ * computer to arbitrary precision for good: from then on it runs in a slower interpreter on {@link BigInteger} values,
+ * keeping cells that do not fit in a {@code long} in a side table. Output of such a value fails with an
+ * {@link ArithmeticException}, since channels and devices carry {@code long} values.
+ */
+class IntComp {
+    int pos = 0;
+    int rbase = 0;
+    boolean halted = false;
+    boolean terminated = false;
+    final Memory memory;
+    final LongChannel input;
+    final LongChannel output;
+    private DecodeCache decoded;
+    private Backend backend;
+    IoDevice device;
+    boolean codeModified = false;
+    private boolean stopAfterOutput = false;
+    private boolean fuse = true;
+    private Profiler profiler;
+    private LoopDetector detector;
+    final long id = IntcodeEvents.nextId();
+    long instructionsExecuted = 0;
+    IntcodeEvents.InputBlocked blocked;
+    private Map<Long, BigInteger> wideCells;
+
+    IntComp(final long[] instructions) {
+        this(instructions, new LongChannel(), new LongChannel());
+    }
+
+    IntComp(final long[] instructions, final LongChannel input, final LongChannel output) {
+        this(new Memory(instructions), input, output);
+    }
+
+    IntComp(final Memory memory, final LongChannel input, final LongChannel output) {
+        this(memory, input, output, 0);
+    }
+
+    private IntComp(final Memory memory, final LongChannel input, final LongChannel output, final long parent) {
+        this.memory = memory;
+        this.input = input;
+        this.output = output;
+        memory.runBy(id);
+        IntcodeEvents.created(this, parent);
+    }
+
+    IntComp withBackend(final Backend backend) {
+        this.backend = backend;
+        return this;
+    }
+
+    /**
+     * Turns superinstruction fusion in the interpreter on or off. Must be called before the computer first runs.
+     */
+    IntComp withFusion(final boolean fuse) {
+        if (fuse != this.fuse) {
+            decoded = null;
+        }
+        this.fuse = fuse;
+        return this;
+    }
+
+    /**
+     * Starts the computer on {@code decoded}, decoded with fusion from the memory it was created with. Must be called
+     * before the computer first runs.
+     */
+    IntComp withDecodeCache(final DecodeCache decoded) {
+        this.decoded = decoded;
+        return this;
+    }
+
+    /**
+     * Attaches a profiler. The computer then runs every instruction in the interpreter, without fusion, even if a
+     * backend is attached.
+     */
+    IntComp withProfiler(final Profiler profiler) {
+        this.profiler = profiler;
+        return this;
+    }
+
+    /**
+     * Turns on a {@link LoopDetector}: once the computer comes back to an earlier state without input or output in
+     * between, {@link #run(long)} throws {@link LoopDetector.InfiniteLoop}. The computer then runs in the
+     * interpreter even if a backend is attached, and its memory must only change through the program from now on.
+     */
+    IntComp withLoopDetection() {
+        this.detector = new LoopDetector(memory);
+        return this;
+    }
+
+    IntComp withDevice(final IoDevice device) {
+        this.device = device;
+        return this;
+    }
+
+    /**
+     * Returns a copy of this computer in its current state. Memory and decoded instructions are shared
+     * copy-on-write, so forking costs little more than copying the channels, and the copy then pays for the pages and
+     * decoded chunks it writes to. The input and output channels are copied into new channels. The copy runs in the
+     * interpreter and without a device, profiler or loop detection until they are attached.
+     */
+    IntComp fork() {
+        final IntComp copy = new IntComp(memory.fork(), input.copy(), output.copy(), id);
+        copy.pos = pos;
+        copy.rbase = rbase;
+        copy.halted = halted;
+        copy.terminated = terminated;
+        copy.fuse = fuse;
+        if (decoded == null) {
+            decoded = new DecodeCache((int) Math.min(memory.size(), Memory.PAGE_SIZE), fuse);
+        }
+        copy.decoded = decoded.share(memory);
+        if (wideCells != null) {
+            copy.wideCells = new HashMap<>(wideCells);
+        }
+        return copy;
+    }
+
+    public boolean hasMoreInstructions() {
+        return pos < memory.size() && !halted && !terminated;
+    }
+
+    public void step() {
+        run(1);
+    }
+
+    /**
+     * Runs until the computer halts or terminates.
+     */
+    void runUntilBlocked() {
+        run(Long.MAX_VALUE);
+    }
+
+    /**
+     * Executes at most {@code maxInstructions} instructions, stopping early if the computer halts for input or
+     * terminates. Returns the number of instructions executed.
+     */
+    long run(final long maxInstructions) {
+        final long offered = output.offered();
+        long executed;
+        try {
+            executed = backend == null || profiler != null || detector != null || wideCells != null
+                ? interpret(maxInstructions)
+                : backend.run(this, maxInstructions);
+        } catch (final Overflow overflow) {
+            executed = widen(overflow, maxInstructions);
+        }
+        ran(executed, offered);
+        return executed;
+    }
+
+    /**
+     * True once a result did not fit in 64 bits and the computer runs on arbitrary precision.
+     */
+    boolean isWide() {
+        return wideCells != null;
+    }
+
+    /**
+     * Switches to arbitrary precision and runs on from the instruction that overflowed, which has not written
+     * anything yet. Instructions executed before the overflow in the same run are not counted.
+     */
+    private long widen(final Overflow overflow, final long maxInstructions) {
+        pos = overflow.pc;
+        wideCells = new HashMap<>();
+        return interpretWide(maxInstructions);
+    }
+
+    private void ran(final long executed, final long offered) {
+        instructionsExecuted += executed;
+        IntcodeEvents.ran(this, executed, output.offered() - offered);
+    }
+
+    /**
+     * Same as {@link #run(long)}, but always goes through the interpreter.
+     */
+    long interpret(final long maxInstructions) {
+        if (decoded == null) {
+            decoded = new DecodeCache((int) Math.min(memory.size(), Memory.PAGE_SIZE), fuse);
+        }
+        if (wideCells != null) {
+            return interpretWide(maxInstructions);
+        }
+
+        long executed = 0;
+        while (executed < maxInstructions && hasMoreInstructions()) {
+            if (!decoded.isDecoded(pos)) {
+                decoded.decode(memory, pos);
+            }
+            if (profiler != null) {
+                profiler.executed(this, pos, decoded.op(pos));
+            } else {
+                Fusion fusion = decoded.fusion(pos);
+                if (fusion == null) {
+                    fusion = decoded.fuse(memory, pos);
+                }
+                if (fusion != Fusion.NONE && maxInstructions - executed >= fusion.instructions) {
+                    final int done = fused(fusion);
+                    if (done < 0) {
+                        return executed - done;
+                    }
+                    executed += done;
+                    continue;
+                }
+            }
+            final Op opCode = decoded.op(pos);
+            final int modes = decoded.modes(pos);
+            final int m1 = modes & 0xF;
+            final int m2 = modes >> 4 & 0xF;
+            final int m3 = modes >> 8;
+            final long p1 = decoded.arg(pos, 0);
+            final long p2 = decoded.arg(pos, 1);
+            final long p3 = decoded.arg(pos, 2);
+
+            switch (opCode) {
+                case ADD:
+                    write(p3, m3, add(read(p1, m1), read(p2, m2), pos));
+                    break;
+                case MUL:
+                    write(p3, m3, multiply(read(p1, m1), read(p2, m2), pos));
+                    break;
+                case INPUT:
+                    if (detector != null) {
+                        detector.io();
+                    }
+                    if (device != null) {
+                        write(p1, m1, device.onInput());
+                        break;
+                    }
+                    if (input.isEmpty()) {
+                        halted = true;
+                        return executed;
+                    }
+                    write(p1, m1, input.pollLong());
+                    break;
+                case OUTPUT:
+                    if (detector != null) {
+                        detector.io();
+                    }
+                    if (device != null) {
+                        device.onOutput(read(p1, m1));
+                        break;
+                    }
+                    output.offerLong(read(p1, m1));
+                    if (stopAfterOutput) {
+                        pos += 2;
+                        return executed + 1;
+                    }
+                    break;
+                case JIT:
+                    if (read(p1, m1) != 0) {
+                        executed++;
+                        if (jump((int) read(p2, m2))) {
+                            return executed;
+                        }
+                        continue;
+                    }
+                    break;
+                case JIF:
+                    if (read(p1, m1) == 0) {
+                        executed++;
+                        if (jump((int) read(p2, m2))) {
+                            return executed;
+                        }
+                        continue;
+                    }
+                    break;
+                case LT:
+                    write(p3, m3, read(p1, m1) < read(p2, m2) ? 1 : 0);
+                    break;
+                case EQ:
+                    write(p3, m3, read(p1, m1) == read(p2, m2) ? 1 : 0);
+                    break;
+                case RBASE:
+                    rbase += (int) read(p1, m1);
+                    break;
+                case HALT:
+                    halted = true;
+                    terminated = true;
+                    return executed + 1;
+            }
+
+            pos += opCode.parameters + 1;
+            executed++;
+        }
+        return executed;
+    }
+
+    /**
+     * Runs the superinstruction at {@code pos}. Returns the number of instructions executed, negated if a backend
+     * asked the interpreter to return after a back edge. Stops early when an instruction rewrote the next one, so the
+     * interpreter decodes it again.
+     */
+    private int fused(final Fusion fusion) {
+        decoded.fired[fusion.ordinal()]++;
+        switch (fusion) {
+            case ARITH_ARITH_ARITH:
+                pos = arith(pos);
+                if (!decoded.isDecoded(pos)) {
+                    return 1;
+                }
+                pos = arith(pos);
+                if (!decoded.isDecoded(pos)) {
+                    return 2;
+                }
+                pos = arith(pos);
+                return 3;
+            case ARITH_ARITH:
+                pos = arith(pos);
+                if (!decoded.isDecoded(pos)) {
+                    return 1;
+                }
+                pos = arith(pos);
+                return 2;
+            case ARITH_BRANCH:
+                pos = arith(pos);
+                if (!decoded.isDecoded(pos)) {
+                    return 1;
+                }
+                return branch() ? -2 : 2;
+            case RBASE_ARITH:
+                pos = relativeBase(pos);
+                pos = arith(pos);
+                return 2;
+            case RBASE_BRANCH:
+                pos = relativeBase(pos);
+                return branch() ? -2 : 2;
+        }
+        throw new IllegalArgumentException("Not a fusion: " + fusion);
+    }
+
+    /**
+     * Executes the add, multiply or compare instruction decoded at {@code pc}. Returns the address after it.
+     */
+    private int arith(final int pc) {
+        final int modes = decoded.modes(pc);
+        final long a = read(decoded.arg(pc, 0), modes & 0xF);
+        final long b = read(decoded.arg(pc, 1), modes >> 4 & 0xF);
+        final long value;
+        switch (decoded.op(pc)) {
+            case ADD:
+                value = add(a, b, pc);
+                break;
+            case MUL:
+                value = multiply(a, b, pc);
+                break;
+            case LT:
+                value = a < b ? 1 : 0;
+                break;
+            default:
+                value = a == b ? 1 : 0;
+                break;
+        }
+        write(decoded.arg(pc, 2), modes >> 8, value);
+        return pc + 4;
+    }
+
+    private int relativeBase(final int pc) {
+        rbase += (int) read(decoded.arg(pc, 0), decoded.modes(pc) & 0xF);
+        return pc + 2;
+    }
+
+    /**
+     * Executes the jump decoded at {@code pos}. Returns true if the backend wants the interpreter to return.
+     */
+    private boolean branch() {
+        final int modes = decoded.modes(pos);
+        final boolean nonZero = read(decoded.arg(pos, 0), modes & 0xF) != 0;
+        if (nonZero == (decoded.op(pos) == Op.JIT)) {
+            return jump((int) read(decoded.arg(pos, 1), modes >> 4 & 0xF));
+        }
+        pos += 3;
+        return false;
+    }
+
+    /**
+     * Describes which superinstructions the interpreter ran for this computer, and how often.
+     */
+    String fusionReport() {
+        return decoded == null ? "not run" : decoded.report();
+    }
+
+    /**
+     * The interpreter on arbitrary precision values. Decodes every instruction from memory as it goes, since operands
+     * may be too wide for the decode cache.
+     */
+    private long interpretWide(final long maxInstructions) {
+        long executed = 0;
+        while (executed < maxInstructions && hasMoreInstructions()) {
+            if (wideCells.containsKey((long) pos)) {
+                throw new ArithmeticException("Instruction at " + pos + " does not fit in 64 bits");
+            }
+            final long instr = load(pos);
+            final Op opCode = Op.of(instr % 100);
+            final int m1 = (int) (instr / 100 % 10);
+            final int m2 = (int) (instr / 1000 % 10);
+            final int m3 = (int) (instr / 10000 % 10);
+            if (profiler != null) {
+                profiler.executed(this, pos, opCode);
+            }
+
+            switch (opCode) {
+                case ADD:
+                    writeWide(pos + 3, m3, readWide(pos + 1, m1).add(readWide(pos + 2, m2)));
+                    break;
+                case MUL:
+                    writeWide(pos + 3, m3, readWide(pos + 1, m1).multiply(readWide(pos + 2, m2)));
+                    break;
+                case INPUT:
+                    if (device != null) {
+                        writeWide(pos + 1, m1, BigInteger.valueOf(device.onInput()));
+                        break;
+                    }
+                    if (input.isEmpty()) {
+                        halted = true;
+                        return executed;
+                    }
+                    writeWide(pos + 1, m1, BigInteger.valueOf(input.pollLong()));
+                    break;
+                case OUTPUT: {
+                    final BigInteger wide = readWide(pos + 1, m1);
+                    if (wide.bitLength() >= Long.SIZE) {
+                        throw new ArithmeticException("Output at " + pos + " does not fit in 64 bits: " + wide);
+                    }
+                    final long value = wide.longValue();
+                    if (device != null) {
+                        device.onOutput(value);
+                        break;
+                    }
+                    output.offerLong(value);
+                    if (stopAfterOutput) {
+                        pos += 2;
+                        return executed + 1;
+                    }
+                    break;
+                }
+                case JIT:
+                case JIF:
+                    if ((readWide(pos + 1, m1).signum() != 0) == (opCode == Op.JIT)) {
+                        executed++;
+                        if (jump(readWide(pos + 2, m2).intValueExact())) {
+                            return executed;
+                        }
+                        continue;
+                    }
+                    break;
+                case LT:
+                    writeWide(pos + 3, m3, readWide(pos + 1, m1).compareTo(readWide(pos + 2, m2)) < 0
+                        ? BigInteger.ONE
+                        : BigInteger.ZERO);
+                    break;
+                case EQ:
+                    writeWide(pos + 3, m3, readWide(pos + 1, m1).equals(readWide(pos + 2, m2))
+                        ? BigInteger.ONE
+                        : BigInteger.ZERO);
+                    break;
+                case RBASE:
+                    rbase += readWide(pos + 1, m1).intValueExact();
+                    break;
+                case HALT:
+                    halted = true;
+                    terminated = true;
+                    return executed + 1;
+            }
+
+            pos += opCode.parameters + 1;
+            executed++;
+        }
+        return executed;
+    }
+
+    private BigInteger readWide(final long cell, final int mode) {
+        final BigInteger param = loadWide(cell);
+        switch (mode) {
+            case 0:
+                return loadWide(param.longValueExact());
+            case 1:
+                return param;
+            case 2:
+                return loadWide(param.longValueExact() + rbase);
+        }
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+
+    private void writeWide(final long cell, final int mode, final BigInteger value) {
+        final long param = loadWide(cell).longValueExact();
+        final long address = mode == 2 ? param + rbase : param;
+        if (value.bitLength() < Long.SIZE) {
+            wideCells.remove(address);
+        } else {
+            wideCells.put(address, value);
+        }
+        // A wide value leaves its low bits in memory, so decoded code and backends still see the cell change
+        store(address, value.longValue());
+    }
+
+    private BigInteger loadWide(final long address) {
+        final BigInteger wide = wideCells.get(address);
+        return wide != null ? wide : BigInteger.valueOf(load(address));
+    }
+
+    /**
+     * {@code a + b}, or an {@link Overflow} for the instruction at {@code pc} if the sum does not fit in 64 bits.
+     * Called by compiled code as well.
+     */
+    static long add(final long a, final long b, final int pc) {
+        final long sum = a + b;
+        if (((a ^ sum) & (b ^ sum)) < 0) {
+            throw new Overflow(pc);
+        }
+        return sum;
+    }
+
+    /**
+     * {@code a * b}, or an {@link Overflow} for the instruction at {@code pc} if the product does not fit in 64 bits.
+     * Called by compiled code as well.
+     */
+    static long multiply(final long a, final long b, final int pc) {
+        final long product = a * b;
+        if (Math.multiplyHigh(a, b) != product >> 63) {
+            throw new Overflow(pc);
+        }
+        return product;
+    }
+
+    /**
+     * Moves to {@code target}. Returns true if the backend wants the interpreter to return after a backward jump.
+     */
+    private boolean jump(final int target) {
+        final boolean backward = target <= pos;
+        pos = target;
+        if (backward && detector != null) {
+            detector.backEdge(this);
+        }
+        return backward && backend != null && backend.backEdge(target);
+    }
+
+    /**
+     * Returns the output of this computer as an iterator that runs the program only as far as needed for the next
+     * value. Values already in the output channel come first. Iteration ends when the computer terminates or halts
+     * for input. The program runs in the interpreter while the iterator pulls values.
+     *
+     * @throws IllegalStateException if a device is attached, since output then never reaches the channel
+     */
+    PrimitiveIterator.OfLong outputs() {
+        if (device != null) {
+            throw new IllegalStateException("Output goes to the attached device");
+        }
+
+        return new PrimitiveIterator.OfLong() {
+            @Override
+            public boolean hasNext() {
+                while (output.isEmpty() && hasMoreInstructions()) {
+                    runUntilOutput();
+                }
+                return !output.isEmpty();
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return output.pollLong();
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #outputs()}, as a sequential stream.
+     */
+    LongStream outputStream() {
+        return StreamSupport.longStream(
+            Spliterators.spliteratorUnknownSize(outputs(), Spliterator.ORDERED | Spliterator.NONNULL),
+            false
+        );
+    }
+
+    private void runUntilOutput() {
+        stopAfterOutput = true;
+        try {
+            final long offered = output.offered();
+            long executed;
+            try {
+                executed = interpret(Long.MAX_VALUE);
+            } catch (final Overflow overflow) {
+                executed = widen(overflow, Long.MAX_VALUE);
+            }
+            ran(executed, offered);
+        } finally {
+            stopAfterOutput = false;
+        }
+    }
+
+    void addInput(final long inp) {
+        this.input.offerLong(inp);
+        wake();
+    }
+
+    /**
+     * Lets a computer that halted for input run again. Needed when the input was sent straight to its channel, for
+     * example by another computer sharing the channel as its output.
+     */
+    void wake() {
+        this.halted = false;
+        IntcodeEvents.woken(this);
+    }
+
+    long read(final long pos, final int mode) {
+        switch (mode) {
+            case 0:
+                return load(pos);
+            case 1:
+                return pos;
+            case 2:
+                return load(pos + rbase);
+        }
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+
+    void write(final long pos, final int mode, final long inp) {
+        switch (mode) {
+            case 0:
+            case 1:
+                store(pos, inp);
+                break;
+            case 2:
+                store(pos + rbase, inp);
+                break;
+        }
+    }
+
+    long load(final long address) {
+        if (profiler != null) {
+            profiler.read(address);
+        }
+        return memory.get(address);
+    }
+
+    void store(final long address, final long value) {
+        final long previous = memory.set(address, value);
+        if (detector != null) {
+            detector.written(address, previous, value);
+        }
+        if (profiler != null) {
+            profiler.written(address);
+        }
+        if (decoded != null) {
+            decoded.written(address);
+        }
+        if (backend != null && backend.written(address)) {
+            codeModified = true;
+        }
+    }
+
+    /**
+     * Returns a copy of the cells of program {@code input}, which is parsed only the first time.
+     */
+    static long[] getInstructions(final String input) {
+        return ProgramImage.of(input).cells();
+    }
+
+    /**
+     * An alternative way of executing the program of a computer.
+     */
+    interface Backend {
+
+        /**
+         * Runs {@code comp} with the same contract as {@link IntComp#run(long)}.
+         */
+        long run(IntComp comp, long maxInstructions);
+
+        /**
+         * Called after every write to memory. Returns true if the write hit code the backend has compiled.
+         */
+        boolean written(long address);
+
+        /**
+         * Called by the interpreter after every taken jump to {@code target} at or before the jump itself. Returning
+         * true makes {@link IntComp#interpret(long)} return, so the backend can switch to another way of running.
+         */
+        default boolean backEdge(final int target) {
+            return false;
+        }
+    }
+
+    /**
+     * Thrown by the instruction at {@code pc} when its result does not fit in 64 bits, before it writes anything.
+     * Carries no stack trace, since it is caught by {@link IntComp#run(long)} to switch to arbitrary precision.
+     */
+    static class Overflow extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int pc;
+
+        Overflow(final int pc) {
+            super("Overflow at " + pc, null, false, false);
+            this.pc = pc;
+        }
+    }
+}
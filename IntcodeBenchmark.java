@@ -0,0 +1,881 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Regression benchmark for the shared {@link IntComp}. Runs the embedded program of every Intcode day and a few
+ * synthetic stress programs, checks the answer against the known result and prints, per run: the average wall time,
+ * the throughput in runs and in Intcode instructions per second, and the bytes allocated. Allocation is measured on the
+ * benchmark thread only, so it misses what workloads allocate on threads of their own.
+ *
+ * Arguments, if any, select the workloads whose name contains one of them.
+ */
+class IntcodeBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    /**
+     * Workloads keep warming up until this much time has passed, so that backends whose code the JIT compiles late,
+     * such as the closures of {@link ClosureCompiler}, are measured warm as well.
+     */
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static final int TRANSFER_ROUNDS = 10_000;
+    private static final int TRANSFER_BATCH = 100;
+
+    /**
+     * Reads n, then runs {@code acc = acc * -1 + n} for n down to 1 and outputs acc: four instructions per iteration.
+     * The accumulator stays small, so the loop measures dispatch rather than arbitrary precision.
+     */
+    private static final String ARITHMETIC_LOOP = "3,100,102,-1,101,101,1,101,100,101,1001,100,-1,100,1005,100,2,4,"
+        + "101,99";
+
+    /**
+     * Reads n, writes n down to 1 into consecutive cells from address 1000 through the relative base, then walks back
+     * and outputs their sum. Touches n / {@link Memory#PAGE_SIZE} pages.
+     */
+    private static final String MEMORY_SWEEP = "3,100,1001,100,0,102,109,1000,21001,102,0,0,109,1,1001,102,-1,102,1005,"
+        + "102,8,1001,100,0,102,109,-1,201,0,101,101,1001,102,-1,102,1005,102,25,4,101,99";
+
+    /**
+     * Reads n and outputs sum(n) computed as {@code n + sum(n - 1)}, recursing n deep with a two-cell frame per call
+     * on a relative base stack.
+     */
+    private static final String DEEP_RECURSION = "3,100,109,1000,21101,15,0,0,21001,100,0,1,1105,1,18,4,103,99,109,2,"
+        + "1206,-1,43,21101,34,0,0,21201,-1,-1,1,1105,1,18,2001,103,-1,103,109,-2,2105,1,0,1101,0,0,103,109,-2,"
+        + "2105,1,0";
+
+    /**
+     * Reads n and m, computes 7^n and 49^m by repeated multiplication and outputs whether they are equal. Leaves 64
+     * bits after 22 multiplications and runs on arbitrary precision from there.
+     */
+    private static final String WIDE_POWERS = "3,100,3,106,1101,1,0,101,1101,1,0,102,1101,0,0,103,1002,101,7,101,1001,"
+        + "103,1,103,8,103,100,104,1006,104,16,1101,0,0,103,1002,102,49,102,1001,103,1,103,8,103,106,104,1006,104,35,"
+        + "8,101,102,105,4,105,99";
+
+    /**
+     * Reads n and counts it down to zero, then toggles a cell between 0 and 1 forever: a cycle of two back edges whose
+     * head is at address {@value #SPIN_ENTRY}.
+     */
+    private static final String SPIN_LOOP = "3,100,1001,100,-1,100,1005,100,2,1002,101,-1,101,1001,101,1,101,1105,1,9";
+    private static final int SPIN_ENTRY = 9;
+
+    /**
+     * Network node: reads its address a, sends (a, {@link #NETWORK_HOPS}) to node a + 1 (wrapping at
+     * {@link #NETWORK_NODES}), then relays every packet it receives to the next node with one hop less, or to the NAT
+     * once no hops are left.
+     */
+    private static final String RELAY_NODE = "3,200,1001,200,1,201,1008,201,%d,202,1006,202,17,1101,0,0,201,4,201,4,"
+        + "200,104,%d,3,203,1008,203,-1,202,1005,202,23,3,204,1006,204,50,1001,204,-1,204,4,201,4,203,4,204,1105,1,23,"
+        + "104,255,4,203,4,204,1105,1,23";
+    private static final int NETWORK_NODES = 50;
+    private static final int NETWORK_HOPS = 1_000;
+
+    private static final long NOUN_VERB_TARGET = 19_690_720;
+    private static final long NOUN_VERB = 6421;
+
+    private static final int STRESS_N = 200_000;
+    private static final long ARITHMETIC_RESULT = -STRESS_N / 2;
+    private static final long SUM_RESULT = (long) STRESS_N * (STRESS_N + 1) / 2;
+
+    /**
+     * Copies of the Day13 program, about 2250 cells each, concatenated into the large program the parser rows read.
+     */
+    private static final int LARGE_PROGRAM_COPIES = 500;
+
+    private static final Scheduler SCHEDULER = new Scheduler(2, 1_000, 100_000_000);
+
+    private static final BytecodeCompiler BYTECODE = new BytecodeCompiler();
+    private static final TieredCompiler TIERED = new TieredCompiler();
+    private static final AotCompiler AOT = new AotCompiler();
+    private static final ProgramParser PARSER = new ProgramParser();
+    private static Path largeProgram;
+    private static Path largeBinary;
+    private static String networkReport = "not run";
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, Workload> workloads = new LinkedHashMap<>();
+        workloads.put("Day2 noun/verb search", () -> nounVerb(null));
+        workloads.put(
+            "Day2 noun/verb search, AOT",
+            () -> nounVerb(AOT.compile(ProgramImage.of(Day2.getInput()), 1, 2))
+        );
+        workloads.put("Day5 TEST diagnostic", () -> diagnostic(5));
+        workloads.put("Day7 amplifier feedback", IntcodeBenchmark::amplifiers);
+        workloads.put("Day7 amplifier feedback, scheduler", IntcodeBenchmark::scheduledAmplifiers);
+        workloads.put("Transfer, ArrayBlockingQueue", IntcodeBenchmark::blockingQueueTransfer);
+        workloads.put("Transfer, LongChannel", IntcodeBenchmark::channelTransfer);
+        workloads.put("Day9 BOOST test mode", () -> boost(1, null, true));
+        workloads.put("Day9 BOOST sensor mode", () -> boost(2, null, true));
+        workloads.put("Day9 BOOST sensor, unfused", () -> boost(2, null, false));
+        workloads.put("Day9 BOOST sensor, closures", () -> boost(2, closures(), true));
+        workloads.put("Day9 BOOST sensor, AOT", () -> boost(2, aot(Day9.getInput()), true));
+        workloads.put("Day9 BOOST sensor, loop detection", IntcodeBenchmark::detectedBoost);
+        workloads.put("Day11 hull painter", () -> paint(null));
+        workloads.put("Day11 hull painter, bytecode", () -> paint(bytecode()));
+        workloads.put("Day11 hull painter, device", IntcodeBenchmark::paintWithDevice);
+        workloads.put("Day13 arcade headless", () -> arcade(null));
+        workloads.put("Day13 arcade headless, profiled", () -> arcade(profiled()));
+        workloads.put("Day13 arcade headless, bytecode", () -> arcade(bytecode()));
+        workloads.put("Day13 arcade headless, tiered", () -> arcade(comp -> TIERED.newBackend()));
+        workloads.put("Day13 arcade speculative", IntcodeBenchmark::speculativeArcade);
+        workloads.put("Day13 arcade headless, device", IntcodeBenchmark::arcadeWithDevice);
+        workloads.put("Day19 beam probe", () -> beam(null));
+        workloads.put("Day19 beam probe, closures", () -> beam(closures()));
+        workloads.put("Day19 beam probe, tiered", () -> beam(comp -> TIERED.newBackend()));
+        workloads.put("Day19 beam probe, AOT", () -> beam(aot(Day19.getInput())));
+        workloads.put("Day19 beam probe, forked", () -> forkedBeam(false));
+        workloads.put("Day19 beam probe, lazy output", () -> forkedBeam(true));
+        workloads.put("Day19 beam probe, scheduler", IntcodeBenchmark::scheduledBeam);
+        workloads.put("Stress arithmetic loop", () -> stress(ARITHMETIC_LOOP, null));
+        workloads.put("Stress arithmetic loop, bytecode", () -> stress(ARITHMETIC_LOOP, bytecode()));
+        workloads.put("Stress memory sweep", () -> stress(MEMORY_SWEEP, null));
+        workloads.put("Stress memory sweep, closures", () -> stress(MEMORY_SWEEP, closures()));
+        workloads.put("Stress deep recursion", () -> stress(DEEP_RECURSION, null));
+        workloads.put("Stress deep recursion, tiered", () -> stress(DEEP_RECURSION, comp -> TIERED.newBackend()));
+        workloads.put("Stress deep recursion, AOT", () -> stress(DEEP_RECURSION, aot(DEEP_RECURSION)));
+        workloads.put("Stress arbitrary precision", IntcodeBenchmark::widePowers);
+        workloads.put("Stress spin loop, detected", IntcodeBenchmark::spin);
+        workloads.put("Network relay, 50 nodes", IntcodeBenchmark::relayNetwork);
+        workloads.put("Parse large program, split", IntcodeBenchmark::parseSplit);
+        workloads.put("Parse large program, mapped", () -> checksum(PARSER.parseFile(largeProgram())));
+        workloads.put("Parse large program, channel", IntcodeBenchmark::parseChannel);
+        workloads.put("Load large program, binary", () -> checksum(ProgramFile.read(largeBinary()).cells()));
+
+        final Map<String, Long> expected = expectedResults();
+        final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        boolean failed = false;
+
+        System.out.printf("%-34s %10s %10s %9s %11s%n", "Workload", "ms/op", "ops/s", "MIPS", "KB/op");
+        for (final Map.Entry<String, Workload> entry : workloads.entrySet()) {
+            if (args.length > 0 && Arrays.stream(args).noneMatch(entry.getKey()::contains)) {
+                continue;
+            }
+
+            final Workload workload = entry.getValue();
+            final long warmupStart = System.nanoTime();
+            for (int i = 0; i < WARMUP_ITERATIONS || System.nanoTime() - warmupStart < WARMUP_NANOS; i++) {
+                workload.run();
+            }
+
+            long result = 0;
+            final long instructionsBefore = IntcodeEvents.instructions();
+            final long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            final long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                result = workload.run();
+            }
+            final long nanos = System.nanoTime() - start;
+            final long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            final long instructions = IntcodeEvents.instructions() - instructionsBefore;
+
+            final boolean ok = expected.get(entry.getKey()) == result;
+            failed |= !ok;
+            System.out.printf(
+                "%-34s %10.3f %10.1f %9.1f %11.1f  result=%d %s%n",
+                entry.getKey(),
+                nanos / 1_000_000.0 / MEASURED_ITERATIONS,
+                MEASURED_ITERATIONS * 1e9 / nanos,
+                instructions * 1e3 / nanos,
+                allocated / 1024.0 / MEASURED_ITERATIONS,
+                result,
+                ok ? "" : "MISMATCH"
+            );
+        }
+
+        System.out.println();
+        System.out.println("Tiered: " + TIERED.report());
+        System.out.println("Scheduler: " + SCHEDULER.report());
+        System.out.println("Images: " + ProgramImage.report());
+        System.out.println("Network: " + networkReport);
+        System.out.println("AOT: " + AOT.report());
+
+        final Map<String, String> programs = new LinkedHashMap<>();
+        programs.put("Day9", Day9.getInput());
+        programs.put("Day11", Day11.getInput());
+        programs.put("Day13", Day13.getInput());
+        programs.put("Day19", Day19.getInput());
+        for (final Map.Entry<String, String> program : programs.entrySet()) {
+            final ProgramAnalysis analysis = ProgramAnalysis.analyze(IntComp.getInstructions(program.getValue()));
+            System.out.println("Analysis " + program.getKey() + ": " + analysis.report());
+        }
+        for (final Map.Entry<String, String> program : programs.entrySet()) {
+            System.out.println("Binary " + program.getKey() + ": " + binaryReport(program.getValue()));
+        }
+        for (final Map.Entry<String, String> program : programs.entrySet()) {
+            System.out.println(
+                "Fusion " + program.getKey() + ": " + fusionReport(program.getKey(), program.getValue())
+            );
+        }
+
+        final Profiler profiler = new Profiler();
+        final IntComp sensor = ProgramImage.of(Day9.getInput()).boot().withProfiler(profiler);
+        sensor.addInput(2);
+        sensor.runUntilBlocked();
+        final Path stacks = Files.createTempFile("day9-", ".collapsed");
+        profiler.writeCollapsedStacks(stacks);
+        System.out.println();
+        System.out.println("Profile Day9 BOOST sensor (collapsed stacks in " + stacks + "):");
+        System.out.println(profiler.report(5));
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Long> expectedResults() {
+        final Map<String, Long> expected = new HashMap<>();
+        expected.put("Day2 noun/verb search", NOUN_VERB);
+        expected.put("Day2 noun/verb search, AOT", NOUN_VERB);
+        expected.put("Day5 TEST diagnostic", 15486302L);
+        expected.put("Day7 amplifier feedback", 34579864L);
+        expected.put("Day7 amplifier feedback, scheduler", 34579864L);
+        expected.put("Transfer, ArrayBlockingQueue", 499_999_500_000L);
+        expected.put("Transfer, LongChannel", 499_999_500_000L);
+        expected.put("Day9 BOOST test mode", 3742852857L);
+        expected.put("Day9 BOOST sensor mode", 73439L);
+        expected.put("Day9 BOOST sensor, unfused", 73439L);
+        expected.put("Day9 BOOST sensor, closures", 73439L);
+        expected.put("Day9 BOOST sensor, AOT", 73439L);
+        expected.put("Day9 BOOST sensor, loop detection", 73439L);
+        expected.put("Day11 hull painter", 2018L);
+        expected.put("Day11 hull painter, bytecode", 2018L);
+        expected.put("Day11 hull painter, device", 2018L);
+        expected.put("Day13 arcade headless", 12952L);
+        expected.put("Day13 arcade headless, profiled", 12952L);
+        expected.put("Day13 arcade headless, bytecode", 12952L);
+        expected.put("Day13 arcade headless, tiered", 12952L);
+        expected.put("Day13 arcade speculative", 12952L);
+        expected.put("Day13 arcade headless, device", 12952L);
+        expected.put("Day19 beam probe", 154L);
+        expected.put("Day19 beam probe, closures", 154L);
+        expected.put("Day19 beam probe, tiered", 154L);
+        expected.put("Day19 beam probe, AOT", 154L);
+        expected.put("Day19 beam probe, forked", 154L);
+        expected.put("Day19 beam probe, lazy output", 154L);
+        expected.put("Day19 beam probe, scheduler", 154L);
+        expected.put("Stress arithmetic loop", ARITHMETIC_RESULT);
+        expected.put("Stress arithmetic loop, bytecode", ARITHMETIC_RESULT);
+        expected.put("Stress memory sweep", SUM_RESULT);
+        expected.put("Stress memory sweep, closures", SUM_RESULT);
+        expected.put("Stress deep recursion", SUM_RESULT);
+        expected.put("Stress deep recursion, tiered", SUM_RESULT);
+        expected.put("Stress deep recursion, AOT", SUM_RESULT);
+        expected.put("Stress arbitrary precision", 1L);
+        expected.put("Stress spin loop, detected", (long) SPIN_ENTRY);
+        // Every packet is delivered once per hop count from NETWORK_HOPS down to 0, plus the first NAT packet
+        expected.put("Network relay, 50 nodes", (long) NETWORK_NODES * (NETWORK_HOPS + 1) + 1);
+        final long day13Sum = Arrays.stream(Day13.getInput().split(",")).mapToLong(Long::parseLong).sum();
+        expected.put("Parse large program, split", day13Sum * LARGE_PROGRAM_COPIES);
+        expected.put("Parse large program, mapped", day13Sum * LARGE_PROGRAM_COPIES);
+        expected.put("Parse large program, channel", day13Sum * LARGE_PROGRAM_COPIES);
+        expected.put("Load large program, binary", day13Sum * LARGE_PROGRAM_COPIES);
+        return expected;
+    }
+
+    /**
+     * Writes a program in the binary format with its block table, loads it back and compares the sizes of both forms.
+     */
+    private static String binaryReport(final String program) throws IOException {
+        final long[] cells = IntComp.getInstructions(program);
+        final ProgramAnalysis analysis = ProgramAnalysis.analyze(cells);
+        final Path file = Files.createTempFile("intcode-", ".icpb");
+        try {
+            ProgramFile.write(file, cells, analysis);
+            final ProgramFile loaded = ProgramFile.read(file);
+            if (!Arrays.equals(loaded.cells(), cells) || loaded.blocks().size() != analysis.blocks().size()) {
+                throw new IllegalStateException("Binary program does not match " + file);
+            }
+            return String.format(
+                "%d cells, %d bytes as text, %d bytes binary with %d blocks",
+                cells.length,
+                program.length(),
+                Files.size(file),
+                loaded.blocks().size()
+            );
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Runs a program with inputs like its workload above and reports the superinstructions the interpreter used. The
+     * hull painter is fed black panels until it terminates; the others run until they first block.
+     */
+    private static String fusionReport(final String day, final String program) {
+        final long[] instructions = IntComp.getInstructions(program);
+        if (day.equals("Day13")) {
+            instructions[0] = 2;
+        }
+        final IntComp comp = new IntComp(instructions);
+        switch (day) {
+            case "Day9":
+                comp.addInput(2);
+                break;
+            case "Day11":
+                while (!comp.terminated) {
+                    comp.addInput(0);
+                    comp.runUntilBlocked();
+                }
+                break;
+            case "Day19":
+                comp.addInput(10);
+                comp.addInput(12);
+                break;
+        }
+        comp.runUntilBlocked();
+        return comp.fusionReport();
+    }
+
+    /**
+     * Day 2 part two: patches every noun and verb into cells 1 and 2 until the program leaves
+     * {@link #NOUN_VERB_TARGET} in cell 0, and returns {@code 100 * noun + verb}.
+     */
+    private static long nounVerb(final AotCompiler.Compiled aot) {
+        final ProgramImage program = ProgramImage.of(Day2.getInput());
+        for (int noun = 0; noun < 100; noun++) {
+            for (int verb = 0; verb < 100; verb++) {
+                final IntComp comp = program.boot();
+                comp.store(1, noun);
+                comp.store(2, verb);
+                if (aot != null) {
+                    comp.withBackend(aot.newBackend());
+                }
+                comp.runUntilBlocked();
+                if (comp.memory.get(0) == NOUN_VERB_TARGET) {
+                    return 100L * noun + verb;
+                }
+            }
+        }
+        throw new IllegalStateException("No noun and verb give " + NOUN_VERB_TARGET);
+    }
+
+    private static long diagnostic(final long systemId) {
+        final IntComp comp = ProgramImage.of(Day5.getInput()).boot();
+        comp.addInput(systemId);
+        comp.runUntilBlocked();
+
+        long last = 0;
+        while (!comp.output.isEmpty()) {
+            last = comp.output.poll();
+        }
+        return last;
+    }
+
+    private static long amplifiers() {
+        final ProgramImage program = ProgramImage.of(Day7.getInput());
+        long highscore = 0;
+        for (final List<Integer> phases : permutations(List.of(5, 6, 7, 8, 9))) {
+            final List<LongChannel> wires = new ArrayList<>();
+            for (int i = 0; i < phases.size(); i++) {
+                wires.add(new LongChannel());
+            }
+
+            final List<IntComp> amps = new ArrayList<>();
+            for (int i = 0; i < phases.size(); i++) {
+                wires.get(i).offerLong(phases.get(i));
+                amps.add(program.boot(wires.get(i), wires.get((i + 1) % phases.size())));
+            }
+            wires.get(0).offerLong(0);
+
+            while (!amps.get(amps.size() - 1).terminated) {
+                for (final IntComp amp : amps) {
+                    amp.wake();
+                    amp.runUntilBlocked();
+                }
+            }
+            highscore = Math.max(highscore, wires.get(0).pollLong());
+        }
+        return highscore;
+    }
+
+    /**
+     * Same as {@link #amplifiers()}, with every feedback loop of five amplifiers handed to the shared scheduler at
+     * once, so the 120 loops run interleaved on its workers.
+     */
+    private static long scheduledAmplifiers() throws Exception {
+        final ProgramImage program = ProgramImage.of(Day7.getInput());
+        final List<LongChannel> results = new ArrayList<>();
+        final List<CompletableFuture<IntComp>> done = new ArrayList<>();
+        for (final List<Integer> phases : permutations(List.of(5, 6, 7, 8, 9))) {
+            final List<LongChannel> wires = new ArrayList<>();
+            for (int i = 0; i < phases.size(); i++) {
+                wires.add(new LongChannel());
+                wires.get(i).offerLong(phases.get(i));
+            }
+            wires.get(0).offerLong(0);
+
+            final List<IntComp> amps = new ArrayList<>();
+            for (int i = 0; i < phases.size(); i++) {
+                amps.add(program.boot(wires.get(i), wires.get((i + 1) % phases.size())));
+            }
+            for (final Scheduler.Task task : SCHEDULER.submitAll(amps)) {
+                done.add(task.done());
+            }
+            results.add(wires.get(0));
+        }
+
+        CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).get();
+        long highscore = 0;
+        for (final LongChannel result : results) {
+            highscore = Math.max(highscore, result.pollLong());
+        }
+        return highscore;
+    }
+
+    /**
+     * Moves {@link #TRANSFER_ROUNDS} batches of {@link #TRANSFER_BATCH} values through the queue type the VMs used
+     * before {@link LongChannel}.
+     */
+    private static long blockingQueueTransfer() {
+        final Queue<Long> queue = new ArrayBlockingQueue<>(TRANSFER_BATCH);
+        long sum = 0;
+        long value = 0;
+        for (int round = 0; round < TRANSFER_ROUNDS; round++) {
+            for (int i = 0; i < TRANSFER_BATCH; i++) {
+                queue.add(value++);
+            }
+            Long polled;
+            while ((polled = queue.poll()) != null) {
+                sum += polled;
+            }
+        }
+        return sum;
+    }
+
+    private static long channelTransfer() {
+        final LongChannel channel = new LongChannel();
+        final long[] batch = new long[TRANSFER_BATCH];
+        long sum = 0;
+        long value = 0;
+        for (int round = 0; round < TRANSFER_ROUNDS; round++) {
+            for (int i = 0; i < TRANSFER_BATCH; i++) {
+                channel.offerLong(value++);
+            }
+            final int drained = channel.drainTo(batch, 0, batch.length);
+            for (int i = 0; i < drained; i++) {
+                sum += batch[i];
+            }
+        }
+        return sum;
+    }
+
+    private static long boost(final long mode, final Function<IntComp, IntComp.Backend> backend, final boolean fuse) {
+        final IntComp comp = withBackend(ProgramImage.of(Day9.getInput()).boot().withFusion(fuse), backend);
+        comp.addInput(mode);
+        comp.runUntilBlocked();
+        return comp.output.poll();
+    }
+
+    private static long paint(final Function<IntComp, IntComp.Backend> backend) {
+        final IntComp comp = withBackend(ProgramImage.of(Day11.getInput()).boot(), backend);
+        final Map<Long, Long> hull = new HashMap<>();
+        int x = 0;
+        int y = 0;
+        int dir = 0;
+
+        while (!comp.terminated) {
+            final long panel = ((long) x << 32) | (y & 0xffffffffL);
+            comp.addInput(hull.getOrDefault(panel, 0L));
+            comp.runUntilBlocked();
+            if (comp.output.isEmpty()) {
+                break;
+            }
+
+            hull.put(panel, comp.output.poll());
+            dir = (dir + (comp.output.poll() == 0 ? 3 : 1)) % 4;
+            x += dir == 1 ? 1 : dir == 3 ? -1 : 0;
+            y += dir == 2 ? 1 : dir == 0 ? -1 : 0;
+        }
+        return hull.size();
+    }
+
+    private static long arcade(final Function<IntComp, IntComp.Backend> backend) {
+        final long[] instructions = IntComp.getInstructions(Day13.getInput());
+        instructions[0] = 2;
+        final IntComp comp = withBackend(new IntComp(instructions), backend);
+        long score = 0;
+        long ballX = 0;
+        long padX = 0;
+
+        while (!comp.terminated) {
+            comp.runUntilBlocked();
+            while (!comp.output.isEmpty()) {
+                final long x = comp.output.poll();
+                final long y = comp.output.poll();
+                final long tile = comp.output.poll();
+                if (x == -1 && y == 0) {
+                    score = tile;
+                } else if (tile == 3) {
+                    padX = x;
+                } else if (tile == 4) {
+                    ballX = x;
+                }
+            }
+            comp.addInput(Long.signum(ballX - padX));
+        }
+        return score;
+    }
+
+    private static long paintWithDevice() {
+        final Map<Long, Long> hull = new HashMap<>();
+        final IoDevice robot = new IoDevice() {
+            private int x = 0;
+            private int y = 0;
+            private int dir = 0;
+            private boolean painted = false;
+
+            @Override
+            public long onInput() {
+                return hull.getOrDefault(panel(), 0L);
+            }
+
+            @Override
+            public void onOutput(final long value) {
+                if (!painted) {
+                    hull.put(panel(), value);
+                } else {
+                    dir = (dir + (value == 0 ? 3 : 1)) % 4;
+                    x += dir == 1 ? 1 : dir == 3 ? -1 : 0;
+                    y += dir == 2 ? 1 : dir == 0 ? -1 : 0;
+                }
+                painted = !painted;
+            }
+
+            private long panel() {
+                return ((long) x << 32) | (y & 0xffffffffL);
+            }
+        };
+
+        ProgramImage.of(Day11.getInput()).boot().withDevice(robot).runUntilBlocked();
+        return hull.size();
+    }
+
+    private static long arcadeWithDevice() {
+        final long[] instructions = IntComp.getInstructions(Day13.getInput());
+        instructions[0] = 2;
+        final Screen screen = new Screen();
+        final IoDevice joystick = new IoDevice() {
+            private final long[] tile = new long[3];
+            private int received = 0;
+
+            @Override
+            public long onInput() {
+                return Long.signum(screen.ballX - screen.padX);
+            }
+
+            @Override
+            public void onOutput(final long value) {
+                tile[received++] = value;
+                if (received == tile.length) {
+                    screen.draw(tile[0], tile[1], tile[2]);
+                    received = 0;
+                }
+            }
+        };
+
+        new IntComp(instructions).withDevice(joystick).runUntilBlocked();
+        return screen.score;
+    }
+
+    /**
+     * Plays Day13 by forking the game before every bounce and running the fork ahead to see where the ball lands.
+     */
+    private static long speculativeArcade() {
+        final long[] instructions = IntComp.getInstructions(Day13.getInput());
+        instructions[0] = 2;
+        final IntComp game = new IntComp(instructions);
+        final Screen screen = new Screen();
+        long target = -1;
+
+        while (!game.terminated) {
+            game.runUntilBlocked();
+            screen.update(game.output);
+            if (screen.ballY == screen.padY - 1) {
+                target = -1;
+            } else if (target < 0) {
+                target = landing(game.fork(), screen.copy());
+            }
+            game.addInput(Long.signum((target < 0 ? screen.ballX : target) - screen.padX));
+        }
+        return screen.score;
+    }
+
+    private static long landing(final IntComp fork, final Screen screen) {
+        while (!fork.terminated && screen.ballY != screen.padY - 1) {
+            fork.addInput(0);
+            fork.runUntilBlocked();
+            screen.update(fork.output);
+        }
+        return screen.ballX;
+    }
+
+    private static long beam(final Function<IntComp, IntComp.Backend> backend) {
+        final ProgramImage program = ProgramImage.of(Day19.getInput());
+        long count = 0;
+        for (int y = 0; y < 50; y++) {
+            for (int x = 0; x < 50; x++) {
+                final IntComp comp = withBackend(program.boot(), backend);
+                comp.addInput(x);
+                comp.addInput(y);
+                comp.runUntilBlocked();
+                count += comp.output.poll();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Same as {@link #beam(Function)}, with all 2500 probes handed to the shared scheduler.
+     */
+    private static long scheduledBeam() throws Exception {
+        final ProgramImage program = ProgramImage.of(Day19.getInput());
+        final List<CompletableFuture<IntComp>> probes = new ArrayList<>();
+        for (int y = 0; y < 50; y++) {
+            for (int x = 0; x < 50; x++) {
+                final IntComp comp = program.boot();
+                comp.addInput(x);
+                comp.addInput(y);
+                probes.add(SCHEDULER.submit(comp).done());
+            }
+        }
+
+        long count = 0;
+        for (final CompletableFuture<IntComp> probe : probes) {
+            count += probe.get().output.pollLong();
+        }
+        return count;
+    }
+
+    private static long forkedBeam(final boolean lazy) {
+        final IntComp probe = ProgramImage.of(Day19.getInput()).boot();
+        probe.runUntilBlocked();
+        long count = 0;
+        for (int y = 0; y < 50; y++) {
+            for (int x = 0; x < 50; x++) {
+                final IntComp comp = probe.fork();
+                comp.addInput(x);
+                comp.addInput(y);
+                if (lazy) {
+                    count += comp.outputs().nextLong();
+                } else {
+                    comp.runUntilBlocked();
+                    count += comp.output.poll();
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long stress(final String program, final Function<IntComp, IntComp.Backend> backend) {
+        final IntComp comp = withBackend(ProgramImage.of(program).boot(), backend);
+        comp.addInput(STRESS_N);
+        comp.runUntilBlocked();
+        return comp.output.poll();
+    }
+
+    private static long relayNetwork() throws InterruptedException {
+        final ProgramImage node = ProgramImage.of(String.format(RELAY_NODE, NETWORK_NODES, NETWORK_HOPS));
+        try (Network network = new Network(node, NETWORK_NODES, 2, 1_000)) {
+            if (network.runUntilNatRepeats() != 0) {
+                throw new IllegalStateException("Relay packets reach the NAT with hops left");
+            }
+            networkReport = network.report();
+            return network.delivered();
+        }
+    }
+
+    /**
+     * Same as {@code boost(2, null, true)}, with loop detection sampling every back edge of a program that never
+     * cycles.
+     */
+    private static long detectedBoost() {
+        final IntComp comp = ProgramImage.of(Day9.getInput()).boot().withLoopDetection();
+        comp.addInput(2);
+        comp.runUntilBlocked();
+        return comp.output.poll();
+    }
+
+    private static long spin() {
+        final IntComp comp = ProgramImage.of(SPIN_LOOP).boot().withLoopDetection();
+        comp.addInput(STRESS_N);
+        try {
+            comp.runUntilBlocked();
+        } catch (final LoopDetector.InfiniteLoop loop) {
+            if (loop.length != 2) {
+                throw new IllegalStateException("Spin loop detected with length " + loop.length);
+            }
+            return loop.entry;
+        }
+        throw new IllegalStateException("Spin loop stopped");
+    }
+
+    private static long widePowers() {
+        final IntComp comp = ProgramImage.of(WIDE_POWERS).boot();
+        comp.addInput(2_000);
+        comp.addInput(1_000);
+        comp.runUntilBlocked();
+        return comp.output.poll();
+    }
+
+    /**
+     * The way programs used to be parsed: read the whole file into a string, split it and parse every piece.
+     */
+    private static long parseSplit() throws IOException {
+        return checksum(Arrays.stream(Files.readString(largeProgram()).split(","))
+            .map(String::trim)
+            .mapToLong(Long::parseLong)
+            .toArray());
+    }
+
+    private static long parseChannel() throws IOException {
+        try (FileChannel channel = FileChannel.open(largeProgram())) {
+            return checksum(PARSER.parseChannel(channel));
+        }
+    }
+
+    private static long checksum(final long[] cells) {
+        long sum = 0;
+        for (final long cell : cells) {
+            sum += cell;
+        }
+        return sum;
+    }
+
+    /**
+     * Writes the large program to a temporary file on first use, one copy of the Day13 program per line.
+     */
+    private static Path largeProgram() {
+        if (largeProgram == null) {
+            try {
+                final Path file = Files.createTempFile("intcode-large-", ".txt");
+                file.toFile().deleteOnExit();
+                final String copy = Day13.getInput();
+                Files.writeString(file, String.join(",\n", Collections.nCopies(LARGE_PROGRAM_COPIES, copy)));
+                largeProgram = file;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return largeProgram;
+    }
+
+    /**
+     * Writes the large program in the binary format, without a block table, on first use.
+     */
+    private static Path largeBinary() throws IOException {
+        if (largeBinary == null) {
+            final Path file = Files.createTempFile("intcode-large-", ".icpb");
+            file.toFile().deleteOnExit();
+            ProgramFile.write(file, ProgramParser.parse(largeProgram()), null);
+            largeBinary = file;
+        }
+        return largeBinary;
+    }
+
+    private static IntComp withBackend(final IntComp comp, final Function<IntComp, IntComp.Backend> backend) {
+        return backend == null ? comp : comp.withBackend(backend.apply(comp));
+    }
+
+    private static Function<IntComp, IntComp.Backend> closures() {
+        final ClosureCompiler compiler = new ClosureCompiler();
+        return comp -> compiler.newBackend();
+    }
+
+    /**
+     * Attaches a fresh profiler and leaves the computer in the interpreter.
+     */
+    private static Function<IntComp, IntComp.Backend> profiled() {
+        return comp -> {
+            comp.withProfiler(new Profiler());
+            return null;
+        };
+    }
+
+    private static Function<IntComp, IntComp.Backend> bytecode() {
+        return BYTECODE::compile;
+    }
+
+    /**
+     * Compiles {@code program} ahead of time, or loads it from the cache directory, once for all computers.
+     */
+    private static Function<IntComp, IntComp.Backend> aot(final String program) {
+        final AotCompiler.Compiled compiled = AOT.compile(ProgramImage.of(program));
+        return comp -> compiled.newBackend();
+    }
+
+    private static List<List<Integer>> permutations(final List<Integer> items) {
+        if (items.size() <= 1) {
+            return List.of(items);
+        }
+
+        final List<List<Integer>> result = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            final List<Integer> rest = new ArrayList<>(items);
+            final Integer head = rest.remove(i);
+            for (final List<Integer> tail : permutations(rest)) {
+                final List<Integer> permutation = new ArrayList<>();
+                permutation.add(head);
+                permutation.addAll(tail);
+                result.add(permutation);
+            }
+        }
+        return result;
+    }
+
+    private static class Screen {
+        private long score = 0;
+        private long ballX = 0;
+        private long ballY = 0;
+        private long padX = 0;
+        private long padY = 0;
+
+        void update(final LongChannel output) {
+            while (!output.isEmpty()) {
+                draw(output.pollLong(), output.pollLong(), output.pollLong());
+            }
+        }
+
+        void draw(final long x, final long y, final long tile) {
+            if (x == -1 && y == 0) {
+                score = tile;
+            } else if (tile == 3) {
+                padX = x;
+                padY = y;
+            } else if (tile == 4) {
+                ballX = x;
+                ballY = y;
+            }
+        }
+
+        Screen copy() {
+            final Screen copy = new Screen();
+            copy.score = score;
+            copy.ballX = ballX;
+            copy.ballY = ballY;
+            copy.padX = padX;
+            copy.padY = padY;
+            return copy;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Workload {
+        long run() throws Exception;
+    }
+}
@@ -0,0 +1,255 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events emitted by the Intcode engine, so computers show up in a recording next to GC and thread
+ * data. All events are in the "Intcode" category. Events about one computer identify it by {@link IntComp#id};
+ * {@link Throughput} is sampled over all computers.
+ *
+ * Events are only built when their type is enabled in the recording, so with JFR off each hook costs an enabled check
+ * that the JIT folds away. The hooks run once per {@link IntComp#run(long)} call, never per instruction. None of the
+ * events record stack traces. To keep recordings small by default, input waits shorter than a millisecond are
+ * dropped and output bursts, which come once per run, are off unless enabled in the recording settings.
+ */
+final class IntcodeEvents {
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final LongAdder INSTRUCTIONS = new LongAdder();
+    private static long lastSampleNanos = System.nanoTime();
+    private static long lastSampleInstructions = 0;
+
+    static {
+        FlightRecorder.addPeriodicEvent(Throughput.class, IntcodeEvents::sampleThroughput);
+    }
+
+    private IntcodeEvents() {
+    }
+
+    static long nextId() {
+        return IDS.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of instructions executed by all computers so far.
+     */
+    static long instructions() {
+        return INSTRUCTIONS.sum();
+    }
+
+    static void created(final IntComp comp, final long parent) {
+        final Created event = new Created();
+        if (event.isEnabled()) {
+            event.vm = comp.id;
+            event.parent = parent;
+            event.memorySize = comp.memory.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Called after {@code comp} ran {@code executed} instructions and offered {@code outputs} values.
+     */
+    static void ran(final IntComp comp, final long executed, final long outputs) {
+        INSTRUCTIONS.add(executed);
+
+        if (outputs > 0) {
+            final OutputBurst burst = new OutputBurst();
+            if (burst.isEnabled()) {
+                burst.vm = comp.id;
+                burst.values = outputs;
+                burst.instructions = executed;
+                burst.commit();
+            }
+        }
+
+        if (comp.terminated && executed > 0) {
+            final Terminated event = new Terminated();
+            if (event.isEnabled()) {
+                event.vm = comp.id;
+                event.instructions = comp.instructionsExecuted;
+                event.commit();
+            }
+        } else if (comp.halted && !comp.terminated && comp.blocked == null) {
+            final InputBlocked event = new InputBlocked();
+            if (event.isEnabled()) {
+                event.vm = comp.id;
+                event.pc = comp.pos;
+                event.begin();
+                comp.blocked = event;
+            }
+        }
+    }
+
+    /**
+     * Ends the input wait of {@code comp}, if one is being recorded.
+     */
+    static void woken(final IntComp comp) {
+        final InputBlocked event = comp.blocked;
+        if (event != null) {
+            comp.blocked = null;
+            event.commit();
+        }
+    }
+
+    static void loopDetected(final IntComp comp, final int entry, final long length) {
+        final LoopDetected event = new LoopDetected();
+        if (event.isEnabled()) {
+            event.vm = comp.id;
+            event.entry = entry;
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    static void memoryGrown(final long vm, final long pages) {
+        final MemoryGrown event = new MemoryGrown();
+        if (event.isEnabled()) {
+            event.vm = vm;
+            event.pages = pages;
+            event.bytes = pages * Memory.PAGE_SIZE * Long.BYTES;
+            event.commit();
+        }
+    }
+
+    private static synchronized void sampleThroughput() {
+        final long now = System.nanoTime();
+        final long instructions = INSTRUCTIONS.sum();
+        final Throughput event = new Throughput();
+        event.instructions = instructions - lastSampleInstructions;
+        event.instructionsPerSecond = now == lastSampleNanos
+            ? 0
+            : (long) (event.instructions * 1e9 / (now - lastSampleNanos));
+        event.vms = IDS.get();
+        event.commit();
+        lastSampleNanos = now;
+        lastSampleInstructions = instructions;
+    }
+
+    @Name("intcode.Created")
+    @Label("Intcode Computer Created")
+    @Description("A computer was created, or forked from another")
+    @Category("Intcode")
+    @StackTrace(false)
+    static class Created extends Event {
+        @Label("Computer")
+        long vm;
+
+        @Label("Forked From")
+        @Description("The computer this one was forked from, or 0")
+        long parent;
+
+        @Label("Memory Size")
+        @Description("Cells of memory at creation")
+        long memorySize;
+    }
+
+    @Name("intcode.InputBlocked")
+    @Label("Intcode Input Blocked")
+    @Description("A computer halted waiting for input, until it was woken up")
+    @Category("Intcode")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static class InputBlocked extends Event {
+        @Label("Computer")
+        long vm;
+
+        @Label("Program Counter")
+        int pc;
+    }
+
+    @Name("intcode.OutputBurst")
+    @Label("Intcode Output Burst")
+    @Description("Values output by one run of a computer")
+    @Category("Intcode")
+    @Enabled(false)
+    @StackTrace(false)
+    static class OutputBurst extends Event {
+        @Label("Computer")
+        long vm;
+
+        @Label("Values")
+        long values;
+
+        @Label("Instructions")
+        long instructions;
+    }
+
+    @Name("intcode.Terminated")
+    @Label("Intcode Computer Terminated")
+    @Description("A computer executed its halt instruction")
+    @Category("Intcode")
+    @StackTrace(false)
+    static class Terminated extends Event {
+        @Label("Computer")
+        long vm;
+
+        @Label("Instructions")
+        @Description("Instructions executed over the lifetime of the computer")
+        long instructions;
+    }
+
+    @Name("intcode.LoopDetected")
+    @Label("Intcode Loop Detected")
+    @Description("A computer came back to an earlier state without input or output in between")
+    @Category("Intcode")
+    @StackTrace(false)
+    static class LoopDetected extends Event {
+        @Label("Computer")
+        long vm;
+
+        @Label("Entry")
+        @Description("Address of the loop head where the state repeated")
+        int entry;
+
+        @Label("Length")
+        @Description("Back edges between two occurrences of the state")
+        long length;
+    }
+
+    @Name("intcode.MemoryGrown")
+    @Label("Intcode Memory Grown")
+    @Description("A computer allocated a new memory page")
+    @Category("Intcode")
+    @StackTrace(false)
+    static class MemoryGrown extends Event {
+        @Label("Computer")
+        @Description("The computer running on the memory, or 0 while a program image or checkpoint is loaded")
+        long vm;
+
+        @Label("Pages")
+        @Description("Pages the memory can read after the allocation")
+        long pages;
+
+        @Label("Size")
+        @Description("Pages times the size of a wide page, an upper bound on the cells allocated")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("intcode.Throughput")
+    @Label("Intcode Throughput")
+    @Description("Instructions executed by all computers since the previous sample")
+    @Category("Intcode")
+    @Period("1 s")
+    @StackTrace(false)
+    static class Throughput extends Event {
+        @Label("Instructions")
+        long instructions;
+
+        @Label("Instructions per Second")
+        long instructionsPerSecond;
+
+        @Label("Computers Created")
+        long vms;
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Something an Intcode computer talks to directly, in place of its input and output channels.
+ *
+ * Attached with {@link IntComp#withDevice(IoDevice)}. Every input instruction calls {@link #onInput()} and every
+ * output instruction calls {@link #onOutput(long)}, on the thread running the computer. A computer with a device
+ * never halts for input, so the device must always have a value ready. During a call, {@code pos} of the computer is
+ * the address of the instruction being executed, so the device may save a {@link Checkpoint} that resumes with it.
+ */
+interface IoDevice {
+
+    long onInput();
+
+    void onOutput(long value);
+}
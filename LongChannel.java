@@ -0,0 +1,224 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Unbounded single-producer, single-consumer channel of primitive {@code long} values.
+ *
+ * Values live in a chain of ring buffers. The producer writes into the newest ring; when it is full, the producer
+ * links a ring of twice the size behind it and continues there. The consumer drains its ring and only then moves on
+ * to the next one, so values come out in the order they went in and old rings are dropped once empty. In the steady
+ * state a single ring is reused over and over. Neither side ever waits for the other: {@link #offerLong(long)} and
+ * {@link #pollLong()} finish in a bounded number of steps, apart from the allocation when a ring fills up.
+ *
+ * At most one thread may offer and at most one thread may poll at a time. The {@link java.util.Queue} methods are
+ * there so the channel can be handed to code that expects a {@code Queue<Long>}; they box. {@link #iterator()} and
+ * {@link #size()} are only exact while nobody offers or polls concurrently.
+ */
+class LongChannel extends AbstractQueue<Long> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(Ring.class, "head", long.class);
+            TAIL = lookup.findVarHandle(Ring.class, "tail", long.class);
+            NEXT = lookup.findVarHandle(Ring.class, "next", Ring.class);
+        } catch (final ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Ring producer;
+    private Ring consumer;
+    private long offered = 0;
+    private Runnable listener;
+
+    LongChannel() {
+        this(INITIAL_CAPACITY);
+    }
+
+    LongChannel(final int initialCapacity) {
+        final Ring ring = new Ring(Integer.highestOneBit(Math.max(2, initialCapacity - 1) << 1));
+        producer = ring;
+        consumer = ring;
+    }
+
+    /**
+     * Returns a new channel holding the values currently in this one.
+     */
+    LongChannel copy() {
+        final long[] values = toLongArray();
+        final LongChannel copy = new LongChannel(values.length);
+        for (final long value : values) {
+            copy.offerLong(value);
+        }
+        return copy;
+    }
+
+    /**
+     * Appends {@code value}. Producer side; never fails.
+     */
+    void offerLong(final long value) {
+        offered++;
+        final Ring ring = producer;
+        final long tail = ring.tail;
+        if (tail - (long) HEAD.getAcquire(ring) < ring.values.length) {
+            ring.values[(int) tail & ring.mask] = value;
+            TAIL.setRelease(ring, tail + 1);
+        } else {
+            final Ring next = new Ring(ring.values.length * 2);
+            next.values[0] = value;
+            next.tail = 1;
+            NEXT.setRelease(ring, next);
+            producer = next;
+        }
+
+        final Runnable notify = listener;
+        if (notify != null) {
+            notify.run();
+        }
+    }
+
+    /**
+     * Sets a listener that the producer calls after every offered value, once the value is visible to the consumer.
+     * Must be set before the producer starts offering.
+     */
+    void whenOffered(final Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns how many values have been offered so far. Producer side.
+     */
+    long offered() {
+        return offered;
+    }
+
+    /**
+     * Removes and returns the oldest value. Consumer side.
+     *
+     * @throws NoSuchElementException if the channel is empty
+     */
+    long pollLong() {
+        final Ring ring = readable();
+        if (ring == null) {
+            throw new NoSuchElementException();
+        }
+        final long head = ring.head;
+        final long value = ring.values[(int) head & ring.mask];
+        HEAD.setRelease(ring, head + 1);
+        return value;
+    }
+
+    /**
+     * Moves up to {@code max} values into {@code into}, starting at {@code offset}. Returns the number of values
+     * moved. Consumer side.
+     */
+    int drainTo(final long[] into, final int offset, final int max) {
+        int drained = 0;
+        Ring ring;
+        while (drained < max && (ring = readable()) != null) {
+            final long head = ring.head;
+            final int count = (int) Math.min(max - drained, (long) TAIL.getAcquire(ring) - head);
+            for (int i = 0; i < count; i++) {
+                into[offset + drained + i] = ring.values[(int) (head + i) & ring.mask];
+            }
+            HEAD.setRelease(ring, head + count);
+            drained += count;
+        }
+        return drained;
+    }
+
+    /**
+     * Consumer side.
+     */
+    @Override
+    public boolean isEmpty() {
+        return readable() == null;
+    }
+
+    @Override
+    public boolean offer(final Long value) {
+        offerLong(value);
+        return true;
+    }
+
+    @Override
+    public Long poll() {
+        return isEmpty() ? null : pollLong();
+    }
+
+    @Override
+    public Long peek() {
+        final Ring ring = readable();
+        return ring == null ? null : ring.values[(int) ring.head & ring.mask];
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (Ring ring = consumer; ring != null; ring = (Ring) NEXT.getAcquire(ring)) {
+            size += (long) TAIL.getAcquire(ring) - (long) HEAD.getAcquire(ring);
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        final long[] values = toLongArray();
+        return Arrays.stream(values).iterator();
+    }
+
+    private long[] toLongArray() {
+        final long[] values = new long[size()];
+        int i = 0;
+        for (Ring ring = consumer; ring != null && i < values.length; ring = (Ring) NEXT.getAcquire(ring)) {
+            final long tail = (long) TAIL.getAcquire(ring);
+            for (long index = ring.head; index < tail && i < values.length; index++) {
+                values[i++] = ring.values[(int) index & ring.mask];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The consumer's ring if it has a value to read, moving on to newer rings as older ones run dry. Null if the
+     * channel is empty.
+     */
+    private Ring readable() {
+        Ring ring = consumer;
+        while (true) {
+            // Read the link before the tail: the producer only links a ring after its last write to this one
+            final Ring next = (Ring) NEXT.getAcquire(ring);
+            if (ring.head < (long) TAIL.getAcquire(ring)) {
+                return ring;
+            }
+            if (next == null) {
+                return null;
+            }
+            ring = next;
+            consumer = next;
+        }
+    }
+
+    private static class Ring {
+        private final long[] values;
+        private final int mask;
+        private long head;
+        private long tail;
+        private Ring next;
+
+        private Ring(final int capacity) {
+            this.values = new long[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+}
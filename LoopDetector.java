@@ -0,0 +1,122 @@
+/**
+ * Detects an Intcode computer that is stuck: once it returns to a state it was in before, with no input or output in
+ * between, it will repeat the same cycle forever.
+ *
+ * The state is the instruction pointer, the relative base and all of memory. Memory enters through a hash that sums
+ * every cell times a pseudo-random odd weight for its address, so a write adds the change of the cell times its
+ * weight: two multiplications, with the old value handed over by {@link Memory#set(long, long)}. Cells that were never
+ * written add nothing. States are only sampled at back edges, which every cycle has to pass through, and compared
+ * with Brent's algorithm: a single saved state is replaced whenever the number of samples since it was saved reaches
+ * the next power of two. A cycle of n back edges that is entered after m of them is found within about 2(m + n)
+ * samples. Each sample costs a few comparisons and nothing is allocated.
+ *
+ * Any input or output starts the search over, since a repeated state proves nothing once the program has talked to the
+ * outside in between. Computers running on arbitrary precision are not checked, since memory only holds the low bits
+ * of wide cells. Memory is compared by its 64-bit hash. Since the hash is linear, two memories only collide if their
+ * differences, times the weights, cancel out modulo 2^64; a change to a single cell never does, as every weight is
+ * odd.
+ */
+class LoopDetector {
+    private long memoryHash = 0;
+    private boolean saved = false;
+    private int savedPos;
+    private int savedRbase;
+    private long savedHash;
+    private long power = 1;
+    private long since = 0;
+    private long samples = 0;
+
+    /**
+     * Starts detection on {@code memory}, which from now on must only change through {@link #written(long, long, long)}
+     * calls.
+     */
+    LoopDetector(final Memory memory) {
+        for (final long number : memory.pageNumbers()) {
+            final long[] page = memory.readPage(number);
+            final long start = number << Memory.PAGE_BITS;
+            for (int cell = 0; cell < page.length; cell++) {
+                memoryHash += page[cell] * weight(start + cell);
+            }
+        }
+    }
+
+    /**
+     * Called after {@code address} changed from {@code previous} to {@code value}.
+     */
+    void written(final long address, final long previous, final long value) {
+        memoryHash += (value - previous) * weight(address);
+    }
+
+    /**
+     * Called by every input and output instruction.
+     */
+    void io() {
+        saved = false;
+    }
+
+    /**
+     * Called after a jump to an address at or before the jump.
+     *
+     * @throws InfiniteLoop if {@code comp} is in a state it was in before
+     */
+    void backEdge(final IntComp comp) {
+        if (comp.isWide()) {
+            return;
+        }
+        samples++;
+        if (!saved) {
+            save(comp);
+            power = 1;
+            return;
+        }
+
+        since++;
+        if (comp.pos == savedPos && comp.rbase == savedRbase && memoryHash == savedHash) {
+            IntcodeEvents.loopDetected(comp, comp.pos, since);
+            throw new InfiniteLoop(comp.pos, since, samples);
+        }
+        if (since == power) {
+            save(comp);
+            power <<= 1;
+        }
+    }
+
+    private void save(final IntComp comp) {
+        saved = true;
+        savedPos = comp.pos;
+        savedRbase = comp.rbase;
+        savedHash = memoryHash;
+        since = 0;
+    }
+
+    /**
+     * Weight of the cell at {@code address} in the memory hash. The shift keeps weights of nearby addresses from
+     * adding up to the weight of another address.
+     */
+    private static long weight(final long address) {
+        final long z = address * 0x9E3779B97F4A7C15L;
+        return z ^ z >>> 29 | 1;
+    }
+
+    /**
+     * Thrown from the back edge at {@code entry} that brought the computer back to a state it was in {@code length}
+     * back edges earlier. {@code entry} is a loop head on the cycle, and the computer is left there.
+     */
+    static class InfiniteLoop extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int entry;
+        final long length;
+        final long samples;
+
+        InfiniteLoop(final int entry, final long length, final long samples) {
+            super(
+                "Infinite loop at " + entry + ": the state repeats every " + length
+                    + " back edges without input or output, found after " + samples + " back edges"
+            );
+            this.entry = entry;
+            this.length = length;
+            this.samples = samples;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sparse memory of an Intcode computer, split into fixed-size pages that are allocated on first write.
+ *
+ * An address is looked up through a two-level page table: the top bits pick a table, the middle bits a page in that
+ * table and the low bits the cell in the page. Tables are kept in slots of plain arrays, so a lookup is two array
+ * reads. The first {@value #DENSE_TABLES} tables, which cover every address a puzzle normally touches, sit in the slot
+ * of their own number. Tables further out get the next free slot after those, found through a sorted map, so the
+ * footprint grows with the set of touched pages instead of the highest address, and a handful of far-apart writes
+ * costs a handful of tables. Cells that were never written read as zero.
+ *
+ * Pages start out narrow, as {@code int[]}, since the cells of most programs fit in 32 bits. The first write of a
+ * value outside the {@code int} range widens its page to {@code long[]} for good. Reads check the narrow page first
+ * and only look for a wide page when there is none, so programs that never leave 32 bits pay for neither the second
+ * lookup nor the wider cells.
+ *
+ * {@link #fork()} shares every page between the original and the copy. Pages are copied on the first write after a
+ * fork, by whichever side writes first. Page tables are shared the same way and copied on the first write to one of
+ * their pages, so a fork costs a copy of the top level only. Tables of wide pages are only created once they hold one.
+ */
+class Memory {
+    static final int PAGE_BITS = 10;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int TABLE_BITS = 10;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+    private static final int TABLE_SHIFT = PAGE_BITS + TABLE_BITS;
+    private static final int DENSE_TABLES = 1 << 8;
+
+    private int[][][] narrow = new int[1][][];
+    private long[][][] wide = new long[1][][];
+    private boolean[][] owned = new boolean[1][];
+    /** Slots of the tables numbered {@value #DENSE_TABLES} and up. */
+    private final TreeMap<Long, Integer> far;
+    private long size = 0;
+    private int pages = 0;
+    private long vm = 0;
+
+    private Memory(final Memory original) {
+        narrow = original.narrow.clone();
+        wide = original.wide.clone();
+        owned = new boolean[narrow.length][];
+        far = new TreeMap<>(original.far);
+        size = original.size;
+        pages = original.pages;
+    }
+
+    /**
+     * Creates a memory holding a copy of {@code image} from address 0.
+     */
+    Memory(final long[] image) {
+        far = new TreeMap<>();
+        for (int start = 0; start < image.length; start += PAGE_SIZE) {
+            final int end = Math.min(start + PAGE_SIZE, image.length);
+            if (fitsNarrow(image, start, end)) {
+                final int[] page = writableNarrowPage(start);
+                for (int cell = start; cell < end; cell++) {
+                    page[cell - start] = (int) image[cell];
+                }
+            } else {
+                System.arraycopy(image, start, writableWidePage(start), 0, end - start);
+            }
+        }
+        size = image.length;
+    }
+
+    long get(final long address) {
+        final int slot = slot(address >>> TABLE_SHIFT);
+        if (slot < 0 || slot >= narrow.length) {
+            checkAddress(address);
+            return 0;
+        }
+        final int[][] narrowTable = narrow[slot];
+        if (narrowTable == null) {
+            return 0;
+        }
+        final int index = (int) (address >>> PAGE_BITS) & TABLE_MASK;
+        final int[] page = narrowTable[index];
+        if (page != null) {
+            return page[(int) address & PAGE_MASK];
+        }
+        final long[][] wideTable = wide[slot];
+        if (wideTable == null || wideTable[index] == null) {
+            return 0;
+        }
+        return wideTable[index][(int) address & PAGE_MASK];
+    }
+
+    /**
+     * Writes {@code value} to {@code address} and returns the value the cell held before.
+     */
+    long set(final long address, final long value) {
+        final int cell = (int) address & PAGE_MASK;
+        final int[] page = (int) value == value ? writableNarrowPage(address) : null;
+        final long previous;
+        if (page != null) {
+            previous = page[cell];
+            page[cell] = (int) value;
+        } else {
+            final long[] widePage = writableWidePage(address);
+            previous = widePage[cell];
+            widePage[cell] = value;
+        }
+        if (address >= size) {
+            size = address + 1;
+        }
+        return previous;
+    }
+
+    /**
+     * Sets the {@link IntComp#id} of the computer running on this memory, which page allocations are reported for.
+     */
+    void runBy(final long vm) {
+        this.vm = vm;
+    }
+
+    /**
+     * One past the highest address that was part of the image or has been written to.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of this memory that shares all pages with it until either side writes to them.
+     */
+    Memory fork() {
+        owned = new boolean[owned.length][];
+        return new Memory(this);
+    }
+
+    /**
+     * Like {@link #fork()}, but leaves this memory untouched, so any number of threads may share it at once. Only for
+     * a template that is never written again and whose pages are all shared already, as they are in a fork.
+     */
+    Memory share() {
+        return new Memory(this);
+    }
+
+    /**
+     * Number of pages this memory can read, including pages shared with forks.
+     */
+    int pages() {
+        return pages;
+    }
+
+    /**
+     * Number of pages that hold a value outside the {@code int} range and are stored as {@code long[]}.
+     */
+    int widePages() {
+        int count = 0;
+        for (final long[][] table : wide) {
+            if (table != null) {
+                for (final long[] page : table) {
+                    count += page == null ? 0 : 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Numbers of all pages this memory can read, in ascending order. Page {@code n} holds the cells from
+     * {@code n * PAGE_SIZE}.
+     */
+    long[] pageNumbers() {
+        final long[] numbers = new long[pages];
+        int count = 0;
+        for (int table = 0; table < Math.min(narrow.length, DENSE_TABLES); table++) {
+            count = addPageNumbers(table, table, numbers, count);
+        }
+        for (final Map.Entry<Long, Integer> entry : far.entrySet()) {
+            count = addPageNumbers(entry.getKey(), entry.getValue(), numbers, count);
+        }
+        return numbers;
+    }
+
+    private int addPageNumbers(final long table, final int slot, final long[] numbers, int count) {
+        if (narrow[slot] != null) {
+            for (int index = 0; index < TABLE_SIZE; index++) {
+                if (narrow[slot][index] != null || wide[slot] != null && wide[slot][index] != null) {
+                    numbers[count++] = table << TABLE_BITS | index;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the cells of page {@code number}, or null if it has never been written. A narrow page is widened into
+     * a new array. The result must not be modified.
+     */
+    long[] readPage(final long number) {
+        final int slot = slot(number >>> TABLE_BITS);
+        if (slot < 0 || slot >= narrow.length || narrow[slot] == null) {
+            return null;
+        }
+        final int index = (int) number & TABLE_MASK;
+        final int[] page = narrow[slot][index];
+        if (page == null) {
+            return wide[slot] == null ? null : wide[slot][index];
+        }
+        final long[] cells = new long[PAGE_SIZE];
+        for (int cell = 0; cell < PAGE_SIZE; cell++) {
+            cells[cell] = page[cell];
+        }
+        return cells;
+    }
+
+    /**
+     * Overwrites page {@code number} with the next {@link #PAGE_SIZE} values of {@code contents}. The page is stored
+     * wide.
+     */
+    void loadPage(final long number, final LongBuffer contents) {
+        contents.get(writableWidePage(number << PAGE_BITS));
+    }
+
+    /**
+     * Grows {@link #size()} to at least {@code size}.
+     */
+    void ensureSize(final long size) {
+        this.size = Math.max(this.size, size);
+    }
+
+    /**
+     * Copies the cells from address 0 up to {@link #size()}, but at most {@code maxLength} cells, into one array.
+     */
+    long[] toArray(final int maxLength) {
+        final long[] copy = new long[(int) Math.min(size, maxLength)];
+        for (int start = 0; start < copy.length; start += PAGE_SIZE) {
+            final long[] page = readPage(start >>> PAGE_BITS);
+            if (page != null) {
+                System.arraycopy(page, 0, copy, start, Math.min(PAGE_SIZE, copy.length - start));
+            }
+        }
+        return copy;
+    }
+
+    private static boolean fitsNarrow(final long[] cells, final int from, final int to) {
+        for (int cell = from; cell < to; cell++) {
+            if ((int) cells[cell] != cells[cell]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the narrow page holding {@code address}, owned by this memory, or null if that page is wide. Allocates
+     * the page if there is none.
+     */
+    private int[] writableNarrowPage(final long address) {
+        final int slot = table(address);
+        final int index = (int) (address >>> PAGE_BITS) & TABLE_MASK;
+        int[] page = narrow[slot][index];
+        if (page == null) {
+            if (wide[slot] != null && wide[slot][index] != null) {
+                return null;
+            }
+            page = new int[PAGE_SIZE];
+            allocated();
+        } else if (owned[slot][index]) {
+            return page;
+        } else {
+            page = page.clone();
+        }
+        narrow[slot][index] = page;
+        owned[slot][index] = true;
+        return page;
+    }
+
+    /**
+     * Returns the wide page holding {@code address}, owned by this memory. Widens a narrow page and allocates the page
+     * if there is none.
+     */
+    private long[] writableWidePage(final long address) {
+        final int slot = table(address);
+        final int index = (int) (address >>> PAGE_BITS) & TABLE_MASK;
+        if (wide[slot] == null) {
+            wide[slot] = new long[TABLE_SIZE][];
+        }
+        long[] page = wide[slot][index];
+        if (page == null) {
+            page = new long[PAGE_SIZE];
+            final int[] narrowPage = narrow[slot][index];
+            if (narrowPage == null) {
+                allocated();
+            } else {
+                for (int cell = 0; cell < PAGE_SIZE; cell++) {
+                    page[cell] = narrowPage[cell];
+                }
+                narrow[slot][index] = null;
+            }
+        } else if (owned[slot][index]) {
+            return page;
+        } else {
+            page = page.clone();
+        }
+        wide[slot][index] = page;
+        owned[slot][index] = true;
+        return page;
+    }
+
+    /**
+     * Returns the slot of page table {@code table}, or -1 if a table that far out has never been created.
+     */
+    private int slot(final long table) {
+        if (table < DENSE_TABLES) {
+            return (int) table;
+        }
+        final Integer slot = far.get(table);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the slot of the page table for {@code address}, owned by this memory. Creates the table if needed and
+     * copies it if it is shared with a fork.
+     */
+    private int table(final long address) {
+        checkAddress(address);
+        final long table = address >>> TABLE_SHIFT;
+        int slot = slot(table);
+        if (slot < 0) {
+            slot = DENSE_TABLES + far.size();
+            far.put(table, slot);
+        }
+        if (slot >= narrow.length) {
+            final int newLength = Math.max(slot + 1, Math.min(narrow.length * 2, DENSE_TABLES));
+            narrow = Arrays.copyOf(narrow, newLength);
+            wide = Arrays.copyOf(wide, newLength);
+            owned = Arrays.copyOf(owned, newLength);
+        }
+
+        if (narrow[slot] == null) {
+            narrow[slot] = new int[TABLE_SIZE][];
+            owned[slot] = new boolean[TABLE_SIZE];
+        } else if (owned[slot] == null) {
+            narrow[slot] = narrow[slot].clone();
+            if (wide[slot] != null) {
+                wide[slot] = wide[slot].clone();
+            }
+            owned[slot] = new boolean[TABLE_SIZE];
+        }
+        return slot;
+    }
+
+    private void allocated() {
+        pages++;
+        IntcodeEvents.memoryGrown(vm, pages);
+    }
+
+    private static void checkAddress(final long address) {
+        if (address < 0) {
+            throw new IllegalArgumentException("Negative address: " + address);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A packet-switched network of Intcode computers, following the protocol of the Category Six network: every node boots
+ * with its address as first input, sends a packet by outputting the destination address, X and Y, and reads X and Y of
+ * the next packet in its queue, or -1 if there is none.
+ *
+ * Each node has a lock-free inbound queue that any thread may send to. The nodes are split over a fixed set of worker
+ * threads, node {@code i} going to worker {@code i % workers}, and a node is only ever run and fed by its own worker,
+ * so computers and their channels stay single-threaded. A worker runs each of its nodes for at most one quantum of
+ * instructions at a time, moves waiting packets into nodes that halted for input and routes the packets they output.
+ *
+ * A node is idle once it has found its queue empty twice in a row without sending anything in between, which is what
+ * a node spinning in its receive loop does; terminated nodes are idle for good. A worker whose nodes are all idle parks
+ * until a packet is sent to one of them, or for a short while at most. Packets to address {@value #NAT} go to the NAT,
+ * which keeps the last one. When the monitor sees every node idle and no packet in flight on two checks in a row with
+ * nothing happening in between, the NAT sends its packet to address 0. The network stops once the NAT sends the same Y
+ * twice in a row. Counters only move after the state they count has changed, so a check that sees no activity
+ * between its first and last read saw a consistent state.
+ */
+class Network implements AutoCloseable {
+    static final int NAT = 255;
+
+    private static final long IDLE_CHECK_NANOS = 200_000;
+    private static final long WORKER_PARK_NANOS = 1_000_000;
+
+    private final Node[] nodes;
+    private final Worker[] workers;
+    private final long quantum;
+
+    private final AtomicInteger idleNodes = new AtomicInteger();
+    private final AtomicInteger terminatedNodes = new AtomicInteger();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong activity = new AtomicLong();
+    private final AtomicReference<Packet> nat = new AtomicReference<>();
+    private final AtomicReference<Packet> firstNat = new AtomicReference<>();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private volatile boolean stopped = false;
+    private Thread monitor;
+    private long natDeliveries = 0;
+    private long idleDetections = 0;
+    private long startNanos;
+    private long elapsedNanos;
+
+    /**
+     * Boots {@code size} nodes, addresses 0 to {@code size - 1}, from {@code program}, to be run by {@code workers}
+     * threads for {@code quantum} instructions at a time.
+     */
+    Network(final ProgramImage program, final int size, final int workers, final long quantum) {
+        if (size < 1 || size > NAT || workers < 1 || quantum < 1) {
+            throw new IllegalArgumentException("Size must be 1 to " + NAT + ", workers and quantum positive");
+        }
+
+        this.quantum = quantum;
+        this.nodes = new Node[size];
+        for (int address = 0; address < size; address++) {
+            nodes[address] = new Node(address, program.boot());
+        }
+        this.workers = new Worker[Math.min(workers, size)];
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Worker(i);
+        }
+    }
+
+    /**
+     * Starts the workers and waits until the NAT sends the same Y to address 0 twice in a row. Returns that Y.
+     *
+     * @throws IllegalStateException if a node failed
+     */
+    long runUntilNatRepeats() throws InterruptedException {
+        monitor = Thread.currentThread();
+        startNanos = System.nanoTime();
+        for (final Worker worker : workers) {
+            worker.thread.start();
+        }
+
+        long lastY = 0;
+        boolean sent = false;
+        long observed = -1;
+        try {
+            while (failure.get() == null) {
+                LockSupport.parkNanos(this, IDLE_CHECK_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                final long before = activity.get();
+                final boolean idle = idleNodes.get() == nodes.length && inFlight.get() == 0;
+                if (!idle || activity.get() != before) {
+                    observed = -1;
+                    continue;
+                }
+                if (observed != before) {
+                    // Idle for the first time at this point: make sure it lasts until the next check
+                    observed = before;
+                    continue;
+                }
+
+                idleDetections++;
+                final Packet packet = nat.get();
+                if (packet == null) {
+                    if (terminatedNodes.get() == nodes.length) {
+                        throw new IllegalStateException("All nodes terminated before the NAT got a packet");
+                    }
+                    continue;
+                }
+                natDeliveries++;
+                if (sent && packet.y == lastY) {
+                    // The repeat ends the run, so it is counted but not queued: node statistics stay exact
+                    return packet.y;
+                }
+                send(0, packet.x, packet.y);
+                observed = -1;
+                sent = true;
+                lastY = packet.y;
+            }
+            throw new IllegalStateException("Node failed", failure.get());
+        } finally {
+            elapsedNanos = System.nanoTime() - startNanos;
+            close();
+        }
+    }
+
+    /**
+     * The first packet sent to the NAT, or null if there was none yet.
+     */
+    Packet firstNatPacket() {
+        return firstNat.get();
+    }
+
+    /**
+     * Sends a packet to the node at {@code address}, or to the NAT. Any thread may send.
+     */
+    void send(final int address, final long x, final long y) {
+        if (address == NAT) {
+            final Packet packet = new Packet(x, y);
+            firstNat.compareAndSet(null, packet);
+            nat.set(packet);
+            activity.incrementAndGet();
+            return;
+        }
+        if (address < 0 || address >= nodes.length) {
+            throw new IllegalArgumentException("No node at address " + address);
+        }
+
+        final Node node = nodes[address];
+        inFlight.incrementAndGet();
+        node.inbound.offer(new Packet(x, y));
+        activity.incrementAndGet();
+        final Worker worker = workers[address % workers.length];
+        if (worker.parked) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    String report() {
+        long sent = 0;
+        long received = 0;
+        long instructions = 0;
+        for (final Node node : nodes) {
+            sent += node.sent;
+            received += node.received;
+            instructions += node.comp.instructionsExecuted;
+        }
+        final double seconds = elapsedNanos / 1e9;
+        return String.format(
+            "%d nodes on %d workers: %d packets sent, %d received (%.0f/s), %d instructions; "
+                + "%d idle detections, %d NAT deliveries; %.3f ms",
+            nodes.length,
+            workers.length,
+            sent,
+            received,
+            seconds == 0 ? 0.0 : received / seconds,
+            instructions,
+            idleDetections,
+            natDeliveries,
+            elapsedNanos / 1e6
+        );
+    }
+
+    /**
+     * One line per node with its packets sent and received, its receive rate and the share of the run it was idle.
+     */
+    String nodeReport() {
+        final StringBuilder report = new StringBuilder();
+        final double seconds = elapsedNanos / 1e9;
+        for (final Node node : nodes) {
+            report.append(String.format(
+                "  node %3d: %8d sent %8d received %10.0f/s, idle %5.1f%%%n",
+                node.address,
+                node.sent,
+                node.received,
+                seconds == 0 ? 0.0 : node.received / seconds,
+                elapsedNanos == 0 ? 0.0 : Math.min(100.0, node.idleNanos * 100.0 / elapsedNanos)
+            ));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Number of packets delivered to nodes so far.
+     */
+    long delivered() {
+        long received = 0;
+        for (final Node node : nodes) {
+            received += node.received;
+        }
+        return received;
+    }
+
+    /**
+     * Stops the workers and waits for them to finish their current pass, after which the statistics are final.
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        for (final Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+        for (final Worker worker : workers) {
+            try {
+                if (worker.thread.isAlive()) {
+                    worker.thread.join();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * One X, Y pair in flight.
+     */
+    static final class Packet {
+        final long x;
+        final long y;
+        private volatile Packet next;
+
+        Packet(final long x, final long y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private final class Node {
+        private final int address;
+        private final IntComp comp;
+        private final PacketQueue inbound = new PacketQueue();
+        private int emptyReads = 0;
+        private boolean idle = false;
+        private long idleSince;
+        private long idleNanos = 0;
+        private long sent = 0;
+        private long received = 0;
+
+        private Node(final int address, final IntComp comp) {
+            this.address = address;
+            this.comp = comp;
+            comp.addInput(address);
+        }
+
+        /**
+         * Feeds the node if it waits for input, runs it for one quantum and routes what it sent. Returns false if the
+         * node is idle or terminated.
+         */
+        private boolean step() {
+            if (comp.terminated) {
+                if (!idle) {
+                    setIdle(true);
+                    terminatedNodes.incrementAndGet();
+                }
+                return false;
+            }
+            if (comp.halted) {
+                final Packet packet = inbound.poll();
+                if (packet != null) {
+                    emptyReads = 0;
+                    setIdle(false);
+                    received++;
+                    comp.input.offerLong(packet.x);
+                    comp.input.offerLong(packet.y);
+                    inFlight.decrementAndGet();
+                } else {
+                    if (++emptyReads >= 2) {
+                        setIdle(true);
+                    }
+                    comp.input.offerLong(-1);
+                }
+                comp.wake();
+            }
+
+            comp.run(quantum);
+            while (comp.output.size() >= 3) {
+                final int destination = Math.toIntExact(comp.output.pollLong());
+                final long x = comp.output.pollLong();
+                final long y = comp.output.pollLong();
+                emptyReads = 0;
+                setIdle(false);
+                sent++;
+                send(destination, x, y);
+            }
+            if (!comp.output.isEmpty()) {
+                // Halfway through a packet
+                emptyReads = 0;
+                setIdle(false);
+            }
+            return !idle;
+        }
+
+        private void setIdle(final boolean idle) {
+            if (this.idle == idle) {
+                return;
+            }
+            this.idle = idle;
+            if (idle) {
+                idleSince = System.nanoTime();
+                idleNodes.incrementAndGet();
+            } else {
+                idleNanos += System.nanoTime() - idleSince;
+                idleNodes.decrementAndGet();
+            }
+            activity.incrementAndGet();
+        }
+    }
+
+    private final class Worker {
+        private final Thread thread;
+        private final List<Node> owned = new ArrayList<>();
+        private volatile boolean parked = false;
+
+        private Worker(final int index) {
+            for (int address = index; address < nodes.length; address += workers.length) {
+                owned.add(nodes[address]);
+            }
+            thread = new Thread(this::work, "intcode-node-worker-" + index);
+            thread.setDaemon(true);
+        }
+
+        private void work() {
+            try {
+                while (!stopped) {
+                    boolean busy = false;
+                    for (final Node node : owned) {
+                        busy |= node.step();
+                    }
+                    if (!busy) {
+                        park();
+                    }
+                }
+            } catch (final RuntimeException e) {
+                failure.compareAndSet(null, e);
+                LockSupport.unpark(monitor);
+            } finally {
+                for (final Node node : owned) {
+                    if (node.idle) {
+                        node.idleNanos += System.nanoTime() - node.idleSince;
+                        node.idleSince = System.nanoTime();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Parks until a packet is sent to one of the nodes of this worker. Rechecks the queues after announcing the
+         * park, so a packet sent in between is not missed; the timeout keeps idle nodes polling now and then.
+         */
+        private void park() {
+            parked = true;
+            for (final Node node : owned) {
+                if (!node.inbound.isEmpty()) {
+                    parked = false;
+                    return;
+                }
+            }
+            LockSupport.parkNanos(this, WORKER_PARK_NANOS);
+            parked = false;
+        }
+    }
+
+    /**
+     * Unbounded multi-producer, single-consumer queue of packets, linked through the packets themselves. Producers
+     * swap themselves in as the newest packet with one atomic exchange and then link the previous newest packet to
+     * theirs, so offering never waits. The consumer follows the links from a stub; a packet whose link is not set yet
+     * reads as the end of the queue until its producer finishes.
+     */
+    private static final class PacketQueue {
+        private static final VarHandle TAIL;
+
+        static {
+            try {
+                TAIL = MethodHandles.lookup().findVarHandle(PacketQueue.class, "tail", Packet.class);
+            } catch (final ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private Packet head = new Packet(0, 0);
+        @SuppressWarnings("unused")
+        private volatile Packet tail = head;
+
+        private void offer(final Packet packet) {
+            final Packet previous = (Packet) TAIL.getAndSet(this, packet);
+            previous.next = packet;
+        }
+
+        private Packet poll() {
+            final Packet next = head.next;
+            if (next == null) {
+                return null;
+            }
+            head = next;
+            return next;
+        }
+
+        private boolean isEmpty() {
+            return head.next == null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+enum Op {
+    ADD(1, 3),
+    MUL(2, 3),
+    INPUT(3, 1),
+    OUTPUT(4, 1),
+    JIT(5, 2),
+    JIF(6, 2),
+    LT(7, 3),
+    EQ(8, 3),
+    RBASE(9, 1),
+    HALT(99, 0);
+
+    private static final Op[] BY_CODE = new Op[100];
+
+    static {
+        for (final Op op : values()) {
+            BY_CODE[op.opCode] = op;
+        }
+    }
+
+    final int opCode;
+    final int parameters;
+
+    Op(final int opCode, final int parameters) {
+        this.opCode = opCode;
+        this.parameters = parameters;
+    }
+
+    static Op of(final long opCode) {
+        final Op op = opCode >= 0 && opCode < BY_CODE.length ? BY_CODE[(int) opCode] : null;
+        return op == null ? HALT : op;
+    }
+
+    /**
+     * Mode of parameter {@code parameter} of {@code instr}, counting from 1.
+     */
+    static int mode(final long instr, final int parameter) {
+        long divisor = 10;
+        for (int i = 0; i < parameter; i++) {
+            divisor *= 10;
+        }
+        return (int) (instr / divisor % 10);
+    }
+
+    /**
+     * True if every parameter of {@code instr} is in position, immediate or relative mode.
+     */
+    static boolean validModes(final long instr) {
+        final Op op = of(instr % 100);
+        for (int i = 1; i <= op.parameters; i++) {
+            if (mode(instr, i) > 2) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
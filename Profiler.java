@@ -0,0 +1,255 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records where an Intcode program spends its instructions. Attached to a computer with
+ * {@link IntComp#withProfiler(Profiler)}; a profiled computer always runs in the interpreter, one instruction per
+ * dispatch.
+ *
+ * The profiler counts executions per program counter and per opcode, taken and not-taken outcomes per branch,
+ * iterations per loop (a taken backward jump), and reads and writes per memory page. An input instruction that blocks
+ * is counted each time it is attempted.
+ *
+ * Calls are inferred from the relative base. Compiled Intcode functions raise the relative base by their frame size
+ * as the first instruction at their entry point and lower it again before returning, so a raise at the target of the
+ * last taken jump opens a frame, and the frame closes when the relative base drops back to where it was. Stacks deeper
+ * than {@value #MAX_DEPTH} frames are cut off. Each frame counts the instructions executed directly in it, which is
+ * what {@link #writeCollapsedStacks(Path)} writes out for flame graph tools.
+ */
+class Profiler {
+    private static final int MAX_PAGE_NUMBER = 1 << 16;
+    private static final int MAX_DEPTH = 256;
+
+    private long[] counts = new long[0];
+    private Op[] ops = new Op[0];
+    private long[] taken = new long[0];
+    private long[] notTaken = new long[0];
+    private final long[] opcodes = new long[Op.values().length];
+    private final Map<Long, Long> loops = new HashMap<>();
+    private long[] pageReads = new long[0];
+    private long[] pageWrites = new long[0];
+    private final Map<Long, long[]> farPages = new HashMap<>();
+    private final Frame root = new Frame(null, 0);
+    private Frame frame = root;
+    private final int[] bases = new int[MAX_DEPTH + 1];
+    private int maxDepth = 0;
+    private long total = 0;
+
+    private int lastPc;
+    private Op lastOp;
+    private int lastRbase;
+    private int entry = -1;
+
+    /**
+     * Called by the interpreter before it executes {@code op} at {@code pc}.
+     */
+    void executed(final IntComp comp, final int pc, final Op op) {
+        if (lastOp != null) {
+            retire(comp, pc);
+        }
+        if (pc >= counts.length) {
+            final int size = Math.max(pc + 1, counts.length * 2);
+            counts = Arrays.copyOf(counts, size);
+            ops = Arrays.copyOf(ops, size);
+            taken = Arrays.copyOf(taken, size);
+            notTaken = Arrays.copyOf(notTaken, size);
+        }
+
+        counts[pc]++;
+        ops[pc] = op;
+        opcodes[op.ordinal()]++;
+        frame.self++;
+        total++;
+        lastPc = pc;
+        lastOp = op;
+        lastRbase = comp.rbase;
+    }
+
+    /**
+     * Accounts for what the previous instruction did, now that the next one is known to run at {@code pc}.
+     */
+    private void retire(final IntComp comp, final int pc) {
+        if (lastOp == Op.JIT || lastOp == Op.JIF) {
+            if (pc == lastPc + 3) {
+                notTaken[lastPc]++;
+                return;
+            }
+            taken[lastPc]++;
+            entry = pc;
+            if (pc <= lastPc) {
+                loops.merge((long) pc << 32 | lastPc, 1L, Long::sum);
+            }
+        } else if (lastOp == Op.RBASE) {
+            if (comp.rbase > lastRbase && lastPc == entry && frame.depth < MAX_DEPTH) {
+                frame = frame.child(entry);
+                bases[frame.depth] = lastRbase;
+                maxDepth = Math.max(maxDepth, frame.depth);
+            }
+            while (frame != root && comp.rbase <= bases[frame.depth]) {
+                frame = frame.parent;
+            }
+        }
+    }
+
+    void read(final long address) {
+        page(address, false);
+    }
+
+    void written(final long address) {
+        page(address, true);
+    }
+
+    private void page(final long address, final boolean write) {
+        final long number = address >>> Memory.PAGE_BITS;
+        if (number >= MAX_PAGE_NUMBER) {
+            farPages.computeIfAbsent(number, n -> new long[2])[write ? 1 : 0]++;
+            return;
+        }
+        if (number >= pageReads.length) {
+            pageReads = Arrays.copyOf(pageReads, (int) number + 1);
+            pageWrites = Arrays.copyOf(pageWrites, (int) number + 1);
+        }
+        if (write) {
+            pageWrites[(int) number]++;
+        } else {
+            pageReads[(int) number]++;
+        }
+    }
+
+    long total() {
+        return total;
+    }
+
+    long count(final int pc) {
+        return pc < counts.length ? counts[pc] : 0;
+    }
+
+    long count(final Op op) {
+        return opcodes[op.ordinal()];
+    }
+
+    /**
+     * Returns the fraction of executions of the branch at {@code pc} that jumped, or NaN if it never ran.
+     */
+    double takenRatio(final int pc) {
+        final long runs = pc < taken.length ? taken[pc] + notTaken[pc] : 0;
+        return runs == 0 ? Double.NaN : (double) taken[pc] / runs;
+    }
+
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Ranks the opcodes, the {@code top} hottest instructions and loops and the memory pages by how often they ran or
+     * were accessed.
+     */
+    String report(final int top) {
+        final StringBuilder report = new StringBuilder();
+        report.append(total).append(" instructions, max call depth ").append(maxDepth).append('\n');
+
+        report.append("Opcodes:");
+        final List<Op> byCount = new ArrayList<>(Arrays.asList(Op.values()));
+        byCount.sort(Comparator.comparingLong((Op op) -> count(op)).reversed());
+        for (final Op op : byCount) {
+            if (count(op) > 0) {
+                report.append(' ').append(op).append(' ').append(percent(count(op)));
+            }
+        }
+        report.append('\n');
+
+        report.append("Hot spots:\n");
+        final List<Integer> pcs = new ArrayList<>();
+        for (int pc = 0; pc < counts.length; pc++) {
+            if (counts[pc] > 0) {
+                pcs.add(pc);
+            }
+        }
+        pcs.sort(Comparator.comparingLong((Integer pc) -> counts[pc]).reversed());
+        for (final int pc : pcs.subList(0, Math.min(top, pcs.size()))) {
+            report.append(String.format("  pc %5d %-6s %10d %6s", pc, ops[pc], counts[pc], percent(counts[pc])));
+            final double ratio = takenRatio(pc);
+            if (!Double.isNaN(ratio)) {
+                report.append(String.format("  branch taken %.1f%%", ratio * 100));
+            }
+            report.append('\n');
+        }
+
+        report.append("Hot loops:\n");
+        final List<Map.Entry<Long, Long>> hottest = new ArrayList<>(loops.entrySet());
+        hottest.sort(Map.Entry.<Long, Long>comparingByValue().reversed());
+        for (final Map.Entry<Long, Long> loop : hottest.subList(0, Math.min(top, hottest.size()))) {
+            report.append(String.format(
+                "  pc %5d..%-5d %10d iterations%n",
+                loop.getKey() >>> 32,
+                loop.getKey() & 0xFFFFFFFFL,
+                loop.getValue()
+            ));
+        }
+
+        report.append("Pages:");
+        for (int number = 0; number < pageReads.length; number++) {
+            if (pageReads[number] + pageWrites[number] > 0) {
+                report.append(String.format(" %d (%d r, %d w)", number, pageReads[number], pageWrites[number]));
+            }
+        }
+        for (final Map.Entry<Long, long[]> far : farPages.entrySet()) {
+            report.append(String.format(" %d (%d r, %d w)", far.getKey(), far.getValue()[0], far.getValue()[1]));
+        }
+        return report.toString();
+    }
+
+    private String percent(final long count) {
+        return String.format("%.1f%%", total == 0 ? 0.0 : count * 100.0 / total);
+    }
+
+    /**
+     * Writes one line per call stack with the number of instructions executed in its innermost frame, in the folded
+     * format read by flame graph tools: {@code main;fn_12;fn_345 6789}.
+     */
+    void writeCollapsedStacks(final Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writeStacks(writer, root, "main");
+        }
+    }
+
+    private static void writeStacks(final BufferedWriter writer, final Frame frame, final String stack)
+        throws IOException {
+        if (frame.self > 0) {
+            writer.write(stack + ' ' + frame.self);
+            writer.newLine();
+        }
+        for (final Frame child : frame.children.values()) {
+            writeStacks(writer, child, stack + ";fn_" + child.entry);
+        }
+    }
+
+    /**
+     * One node of the call tree: a function entered at {@code entry}, reached through the frames above it.
+     */
+    private static class Frame {
+        private final Frame parent;
+        private final int entry;
+        private final int depth;
+        private final Map<Integer, Frame> children = new HashMap<>();
+        private long self = 0;
+
+        private Frame(final Frame parent, final int entry) {
+            this.parent = parent;
+            this.entry = entry;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        private Frame child(final int entry) {
+            return children.computeIfAbsent(entry, e -> new Frame(this, e));
+        }
+    }
+}
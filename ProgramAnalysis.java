@@ -0,0 +1,745 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Static analysis of an Intcode program image: where instructions start, how they group into basic blocks, which
+ * cells are code and which cells the program can ever write to.
+ *
+ * Code is found from address 0 by following fall-through and jump targets. A jump target or condition is known when
+ * it is an immediate or a position operand, and the cell it comes from is never written. An unconditional jump right
+ * after an instruction that pushes the address behind the jump is a call: its target is a procedure and the address
+ * behind it a return site. A jump to an unknown target is a call if it pushes a return address and a return
+ * otherwise. The analysis assumes the calling convention of compiled Intcode: a return goes back to the return site
+ * of the call it came from, and a call through memory reaches a procedure that is called directly or whose address
+ * the program stores as a constant. Every cell of a reached instruction is code; all other cells of the image are
+ * data.
+ *
+ * Writes in position mode go to the address in their operand. Writes in relative mode are bounded by following the
+ * relative base as an exact offset from the entry of each procedure. Every procedure has to return with the offset it
+ * was entered with, and the lowest relative base at each entry follows from its callers, starting from 0 at address
+ * 0. An adjustment that is not known, a mismatch or an unbalanced return gives up on the bound, and relative writes
+ * may then hit any cell.
+ *
+ * Which cells are never written depends on which code is reached, and the other way round. The analysis starts out
+ * assuming that every cell a jump or relative base adjustment reads keeps its value, and repeats with the cells that
+ * turn out to be written until the assumptions and the writes agree. Execution can only leave the analyzed paths by
+ * changing one of the assumed cells, which needs a write the analysis would have found.
+ *
+ * A write into an opcode, the address operand of a write or a relative offset is harmless if the instruction cannot
+ * run again after the write, as with setup code that reuses its own cells. Otherwise every cell is reported as
+ * possibly written; {@link #selfModifying()} lists the cells concerned.
+ */
+class ProgramAnalysis {
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final long[] program;
+    private final boolean[] instruction;
+    private final boolean[] code;
+    private final boolean[] jumpTarget;
+    private final boolean[] returnSite;
+    private final boolean[] entry;
+    private final boolean[] written;
+    private final boolean[] variable;
+    private final int[] procedure;
+    private final List<Block> blocks = new ArrayList<>();
+    private final List<Call> calls = new ArrayList<>();
+    private final List<Integer> selfModifying = new ArrayList<>();
+    private long lowestRelativeWrite;
+    private String rbaseProblem;
+    private int rounds = 0;
+    private long nanos;
+
+    private ProgramAnalysis(final long[] program) {
+        this.program = program;
+        this.instruction = new boolean[program.length];
+        this.code = new boolean[program.length];
+        this.jumpTarget = new boolean[program.length];
+        this.returnSite = new boolean[program.length];
+        this.entry = new boolean[program.length];
+        this.written = new boolean[program.length];
+        this.variable = new boolean[program.length];
+        this.procedure = new int[program.length];
+    }
+
+    static ProgramAnalysis analyze(final long[] program) {
+        final long start = System.nanoTime();
+        final ProgramAnalysis analysis = new ProgramAnalysis(program);
+        do {
+            analysis.reset();
+            analysis.findCode();
+            analysis.findBlocks();
+            analysis.trackRelativeBase();
+            analysis.findWrites();
+            analysis.rounds++;
+        } while (analysis.dropAssumptions());
+        if (analysis.lowestRelativeWrite == UNKNOWN || !analysis.selfModifying.isEmpty()) {
+            Arrays.fill(analysis.written, true);
+        }
+        analysis.nanos = System.nanoTime() - start;
+        return analysis;
+    }
+
+    int length() {
+        return program.length;
+    }
+
+    boolean isInstruction(final int pc) {
+        return pc >= 0 && pc < program.length && instruction[pc];
+    }
+
+    boolean isCode(final int cell) {
+        return cell >= 0 && cell < program.length && code[cell];
+    }
+
+    /**
+     * True for known targets of {@code JIT} and {@code JIF}.
+     */
+    boolean isJumpTarget(final int pc) {
+        return pc >= 0 && pc < program.length && jumpTarget[pc];
+    }
+
+    boolean isReturnSite(final int pc) {
+        return pc >= 0 && pc < program.length && returnSite[pc];
+    }
+
+    /**
+     * False only for cells of the image that no reachable instruction can write to.
+     */
+    boolean mayBeWritten(final int cell) {
+        return cell < 0 || cell >= program.length || written[cell];
+    }
+
+    /**
+     * Entry of the procedure {@code pc} belongs to, as found by following the relative base from address 0, or -1 if
+     * {@code pc} is not an instruction or the relative base could not be followed that far.
+     */
+    int procedureOf(final int pc) {
+        return pc >= 0 && pc < program.length ? procedure[pc] : -1;
+    }
+
+    List<Block> blocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * The block starting at {@code pc}, or null if no block starts there.
+     */
+    Block blockAt(final int pc) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final Block block = blocks.get(mid);
+            if (block.start < pc) {
+                low = mid + 1;
+            } else if (block.start > pc) {
+                high = mid - 1;
+            } else {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cells of instructions that may be rewritten and run again afterwards.
+     */
+    List<Integer> selfModifying() {
+        return Collections.unmodifiableList(selfModifying);
+    }
+
+    /**
+     * Lowest address a relative-mode write can reach, {@link Long#MAX_VALUE} if there are none, or
+     * {@link Long#MIN_VALUE} if the relative base could not be bounded.
+     */
+    long lowestRelativeWrite() {
+        return lowestRelativeWrite;
+    }
+
+    /**
+     * One line with the size of every part of the split and the time the analysis took.
+     */
+    String report() {
+        final int codeCells = count(code);
+        final int neverWritten = program.length - count(written);
+        return String.format(
+            "%d cells: %d code (%.1f%%) in %d instructions, %d blocks, %d procedures, %d jump targets, "
+                + "%d return sites; %d data; %d never written (%.1f%%); relative writes %s; %s%d rounds, %.3f ms",
+            program.length,
+            codeCells,
+            percent(codeCells),
+            count(instruction),
+            blocks.size(),
+            count(entry),
+            count(jumpTarget),
+            count(returnSite),
+            program.length - codeCells,
+            neverWritten,
+            percent(neverWritten),
+            lowestRelativeWrite == Long.MAX_VALUE ? "none"
+                : lowestRelativeWrite == UNKNOWN ? "unbounded (" + rbaseProblem + ")"
+                : "from " + lowestRelativeWrite,
+            selfModifying.isEmpty() ? "" : "self-modifying at " + selfModifying + "; ",
+            rounds,
+            nanos / 1_000_000.0
+        );
+    }
+
+    private void reset() {
+        Arrays.fill(instruction, false);
+        Arrays.fill(code, false);
+        Arrays.fill(jumpTarget, false);
+        Arrays.fill(returnSite, false);
+        Arrays.fill(entry, false);
+        Arrays.fill(written, false);
+        Arrays.fill(procedure, -1);
+        blocks.clear();
+        calls.clear();
+        selfModifying.clear();
+        lowestRelativeWrite = Long.MAX_VALUE;
+        rbaseProblem = null;
+    }
+
+    /**
+     * Marks the cells that were assumed constant but turned out to be written as variable. Returns true if there
+     * were any, so the analysis has to run again.
+     */
+    private boolean dropAssumptions() {
+        if (!selfModifying.isEmpty()) {
+            return false;
+        }
+        boolean dropped = false;
+        for (int pc = 0; pc < program.length; pc++) {
+            if (!instruction[pc] || !Op.validModes(program[pc])) {
+                continue;
+            }
+            final Op op = Op.of(program[pc] % 100);
+            for (int i = 1; i <= op.parameters && steers(op); i++) {
+                final int mode = Op.mode(program[pc], i);
+                final long address = mode == 1 ? pc + i : mode == 0 ? cell(pc + i) : -1;
+                if (address >= 0 && address < program.length && written[(int) address] && !variable[(int) address]) {
+                    variable[(int) address] = true;
+                    dropped = true;
+                }
+            }
+        }
+        return dropped;
+    }
+
+    private void findCode() {
+        final Deque<Integer> work = new ArrayDeque<>();
+        work.add(0);
+        final boolean[] pointedTo = new boolean[program.length];
+        boolean callsThroughMemory = false;
+
+        while (!work.isEmpty()) {
+            while (!work.isEmpty()) {
+                final int pc = work.pop();
+                if (pc < 0 || pc >= program.length || instruction[pc]) {
+                    continue;
+                }
+                instruction[pc] = true;
+
+                final Op op = Op.of(program[pc] % 100);
+                for (int i = 0; i <= op.parameters && pc + i < program.length; i++) {
+                    code[pc + i] = true;
+                }
+                if (!Op.validModes(program[pc])) {
+                    continue;
+                }
+
+                if (op == Op.JIT || op == Op.JIF) {
+                    final long target = constant(pc, 2);
+                    if (target >= 0 && target < program.length) {
+                        jumpTarget[(int) target] = true;
+                        if (mayJump(pc, op)) {
+                            work.push((int) target);
+                        }
+                    }
+                    if (mayFallThrough(pc, op) || pushesReturnAddress(pc)) {
+                        work.push(pc + 3);
+                    }
+                    callsThroughMemory |= target == UNKNOWN && !mayFallThrough(pc, op) && pushesReturnAddress(pc);
+                } else if (op != Op.HALT) {
+                    work.push(pc + op.parameters + 1);
+                }
+            }
+
+            // A call through memory may reach any procedure whose address the program passes around
+            for (int pc = 0; pc < program.length && callsThroughMemory; pc++) {
+                final int pointer = instruction[pc] ? storedConstant(pc) : -1;
+                if (pointer > 0 && !code[pointer]) {
+                    pointedTo[pointer] = true;
+                    work.push(pointer);
+                }
+            }
+        }
+
+        entry[0] = true;
+        for (int pc = 4; pc + 3 < program.length; pc++) {
+            final Op op = Op.of(program[pc] % 100);
+            if (instruction[pc] && instruction[pc - 4] && (op == Op.JIT || op == Op.JIF) && Op.validModes(program[pc])
+                && !mayFallThrough(pc, op) && pushesReturnAddress(pc)) {
+                returnSite[pc + 3] = true;
+                final long target = constant(pc, 2);
+                if (target >= 0 && target < program.length) {
+                    entry[(int) target] = true;
+                }
+            }
+        }
+        for (int pc = 0; pc < program.length; pc++) {
+            if (pointedTo[pc] && !returnSite[pc]) {
+                entry[pc] = true;
+            }
+        }
+    }
+
+    private void findBlocks() {
+        final boolean[] leader = new boolean[program.length];
+        for (int pc = 0; pc < program.length; pc++) {
+            if (!instruction[pc]) {
+                continue;
+            }
+            if (pc == 0 || jumpTarget[pc] || returnSite[pc]) {
+                leader[pc] = true;
+            }
+            final Op op = Op.of(program[pc] % 100);
+            if ((op == Op.JIT || op == Op.JIF) && pc + 3 < program.length) {
+                leader[pc + 3] = true;
+            }
+        }
+
+        for (int start = 0; start < program.length; start++) {
+            if (!instruction[start] || !leader[start]) {
+                continue;
+            }
+
+            int pc = start;
+            int length = 0;
+            final List<Integer> successors = new ArrayList<>();
+            while (true) {
+                final Op op = Op.of(program[pc] % 100);
+                final int next = pc + op.parameters + 1;
+                length++;
+                if (!Op.validModes(program[pc]) || op == Op.HALT) {
+                    break;
+                }
+                if (op == Op.JIT || op == Op.JIF) {
+                    final long target = constant(pc, 2);
+                    if (target != UNKNOWN) {
+                        if (mayJump(pc, op) && isInstruction((int) target)) {
+                            successors.add((int) target);
+                        }
+                    } else {
+                        final boolean[] targets = isCall(pc, op) ? entry : returnSite;
+                        for (int site = 1; site < targets.length; site++) {
+                            if (targets[site]) {
+                                successors.add(site);
+                            }
+                        }
+                    }
+                    if (mayFallThrough(pc, op) && isInstruction(next)) {
+                        successors.add(next);
+                    }
+                    pc = next;
+                    break;
+                }
+                pc = next;
+                if (!isInstruction(pc) || leader[pc]) {
+                    if (isInstruction(pc)) {
+                        successors.add(pc);
+                    }
+                    break;
+                }
+            }
+            blocks.add(new Block(start, Math.min(pc, program.length), length, successors));
+        }
+    }
+
+    private void trackRelativeBase() {
+        final long[] offset = new long[program.length];
+        final long[] lowestWrite = new long[program.length];
+        Arrays.fill(lowestWrite, Long.MAX_VALUE);
+
+        final Deque<long[]> work = new ArrayDeque<>();
+        work.add(new long[] {0, 0, 0});
+        while (!work.isEmpty() && rbaseProblem == null) {
+            final long[] item = work.pop();
+            final int pc = (int) item[0];
+            final int owner = (int) item[1];
+            long rbase = item[2];
+            if (pc < 0 || pc >= program.length) {
+                continue;
+            }
+            if (procedure[pc] >= 0) {
+                if (procedure[pc] != owner || offset[pc] != rbase) {
+                    rbaseProblem = "pc " + pc + " reached with different relative bases";
+                }
+                continue;
+            }
+            procedure[pc] = owner;
+            offset[pc] = rbase;
+
+            final long instr = program[pc];
+            final Op op = Op.of(instr % 100);
+            if (!Op.validModes(instr) || op == Op.HALT) {
+                continue;
+            }
+            if (op == Op.RBASE) {
+                final long adjustment = constant(pc, 1);
+                if (adjustment == UNKNOWN) {
+                    rbaseProblem = "relative base adjusted by a variable at pc " + pc;
+                    continue;
+                }
+                rbase += adjustment;
+            }
+            final int output = writeParameter(op);
+            if (output > 0 && Op.mode(instr, output) == 2) {
+                lowestWrite[owner] = Math.min(lowestWrite[owner], rbase + cell(pc + output));
+            }
+
+            if (op != Op.JIT && op != Op.JIF) {
+                work.push(new long[] {pc + op.parameters + 1, owner, rbase});
+                continue;
+            }
+            final long target = constant(pc, 2);
+            if (isCall(pc, op)) {
+                for (int callee = 1; callee < program.length; callee++) {
+                    if (entry[callee] && (target == UNKNOWN || target == callee)) {
+                        calls.add(new Call(pc, owner, callee, rbase));
+                        work.push(new long[] {callee, callee, 0});
+                    }
+                }
+                work.push(new long[] {pc + 3, owner, rbase});
+                continue;
+            }
+            if (target == UNKNOWN && rbase != 0) {
+                rbaseProblem = "return at pc " + pc + " with relative base off by " + rbase;
+            } else if (target != UNKNOWN && mayJump(pc, op)) {
+                work.push(new long[] {target, owner, rbase});
+            }
+            if (mayFallThrough(pc, op)) {
+                work.push(new long[] {pc + 3, owner, rbase});
+            }
+        }
+
+        for (int pc = 0; pc < program.length && rbaseProblem == null; pc++) {
+            if (instruction[pc] && procedure[pc] < 0) {
+                rbaseProblem = "pc " + pc + " is only reached through memory";
+            }
+        }
+
+        // Lowest relative base at the entry of every procedure: shortest paths over the call graph from address 0
+        final long[] lowest = new long[program.length];
+        Arrays.fill(lowest, Long.MAX_VALUE);
+        lowest[0] = 0;
+        boolean changed = true;
+        for (int round = 0; changed && rbaseProblem == null; round++) {
+            if (round > calls.size()) {
+                rbaseProblem = "relative base decreases through recursion";
+                break;
+            }
+            changed = false;
+            for (final Call call : calls) {
+                final long caller = lowest[call.caller];
+                if (caller != Long.MAX_VALUE && caller + call.offset < lowest[call.callee]) {
+                    lowest[call.callee] = caller + call.offset;
+                    changed = true;
+                }
+            }
+        }
+
+        if (rbaseProblem != null) {
+            lowestRelativeWrite = hasRelativeWrites() ? UNKNOWN : Long.MAX_VALUE;
+            return;
+        }
+        for (int proc = 0; proc < program.length; proc++) {
+            if (lowestWrite[proc] != Long.MAX_VALUE && lowest[proc] != Long.MAX_VALUE) {
+                lowestRelativeWrite = Math.min(lowestRelativeWrite, lowest[proc] + lowestWrite[proc]);
+            }
+        }
+    }
+
+    private void findWrites() {
+        if (lowestRelativeWrite != UNKNOWN && lowestRelativeWrite < program.length) {
+            Arrays.fill(written, (int) Math.max(0, lowestRelativeWrite), program.length, true);
+        }
+        final int[] writer = new int[program.length];
+        Arrays.fill(writer, -1);
+        for (int pc = 0; pc < program.length; pc++) {
+            final int output = instruction[pc] && Op.validModes(program[pc])
+                ? writeParameter(Op.of(program[pc] % 100))
+                : 0;
+            if (output > 0 && Op.mode(program[pc], output) != 2) {
+                final long address = cell(pc + output);
+                if (address >= 0 && address < program.length) {
+                    // Only a cell with a single position-mode writer can be shown to be rewritten harmlessly
+                    writer[(int) address] = written[(int) address] ? -1 : pc;
+                    written[(int) address] = true;
+                }
+            }
+        }
+
+        for (int pc = 0; pc < program.length; pc++) {
+            if (!instruction[pc]) {
+                continue;
+            }
+            final Op op = Op.of(program[pc] % 100);
+            for (int i = 0; i <= op.parameters && pc + i < program.length; i++) {
+                final int cell = pc + i;
+                final boolean fixed = i == 0 || i == writeParameter(op) || steers(op) && Op.mode(program[pc], i) != 1;
+                if (fixed && written[cell]
+                    && (writer[cell] < 0 || mayRunAfter(writer[cell], pc))) {
+                    selfModifying.add(cell);
+                }
+            }
+        }
+    }
+
+    /**
+     * True if the instruction at {@code pc} may run after the one at {@code from}. A call may run every instruction
+     * of the procedures it reaches, and a return continues after every call of its procedure.
+     */
+    private boolean mayRunAfter(final int from, final int pc) {
+        if (rbaseProblem != null) {
+            return true;
+        }
+        final boolean[] reached = new boolean[program.length];
+        final boolean[] returned = new boolean[program.length];
+        final Deque<Integer> work = new ArrayDeque<>(successors(from, reached));
+        while (!work.isEmpty()) {
+            final int at = work.pop();
+            if (at < 0 || at >= program.length || reached[at] || procedure[at] < 0) {
+                continue;
+            }
+            reached[at] = true;
+            final Op op = Op.of(program[at] % 100);
+            final boolean isReturn = (op == Op.JIT || op == Op.JIF) && constant(at, 2) == UNKNOWN && !isCall(at, op);
+            if (isReturn && !returned[procedure[at]]) {
+                returned[procedure[at]] = true;
+                for (final Call call : calls) {
+                    if (call.callee == procedure[at]) {
+                        work.push(call.pc + 3);
+                    }
+                }
+            }
+            work.addAll(successors(at, reached));
+        }
+        return reached[pc];
+    }
+
+    /**
+     * Instructions that can follow {@code pc} in its own procedure. The procedures {@code pc} calls are marked in
+     * {@code reached} in full.
+     */
+    private List<Integer> successors(final int pc, final boolean[] reached) {
+        final List<Integer> successors = new ArrayList<>();
+        final Op op = Op.of(program[pc] % 100);
+        if (!Op.validModes(program[pc]) || op == Op.HALT) {
+            return successors;
+        }
+        if (op != Op.JIT && op != Op.JIF) {
+            successors.add(pc + op.parameters + 1);
+            return successors;
+        }
+        if (isCall(pc, op)) {
+            markCallees(pc, reached);
+            successors.add(pc + 3);
+            return successors;
+        }
+        final long target = constant(pc, 2);
+        if (target != UNKNOWN && mayJump(pc, op)) {
+            successors.add((int) target);
+        }
+        if (mayFallThrough(pc, op)) {
+            successors.add(pc + 3);
+        }
+        return successors;
+    }
+
+    private void markCallees(final int callPc, final boolean[] reached) {
+        final boolean[] done = new boolean[program.length];
+        final Deque<Integer> pending = new ArrayDeque<>();
+        for (final Call call : calls) {
+            if (call.pc == callPc) {
+                pending.push(call.callee);
+            }
+        }
+        while (!pending.isEmpty()) {
+            final int callee = pending.pop();
+            if (done[callee]) {
+                continue;
+            }
+            done[callee] = true;
+            for (int pc = 0; pc < program.length; pc++) {
+                if (procedure[pc] == callee) {
+                    reached[pc] = true;
+                }
+            }
+            for (final Call call : calls) {
+                if (call.caller == callee) {
+                    pending.push(call.callee);
+                }
+            }
+        }
+    }
+
+    private boolean hasRelativeWrites() {
+        for (int pc = 0; pc < program.length; pc++) {
+            final int output = instruction[pc] && Op.validModes(program[pc])
+                ? writeParameter(Op.of(program[pc] % 100))
+                : 0;
+            if (output > 0 && Op.mode(program[pc], output) == 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True if the four cells before the jump at {@code pc} are an {@code ADD} or {@code MUL} with the address after
+     * the jump as an immediate operand, which is how compiled Intcode pushes the return address of a call.
+     */
+    private boolean pushesReturnAddress(final int pc) {
+        if (pc < 4) {
+            return false;
+        }
+        final long push = program[pc - 4];
+        final Op op = Op.of(push % 100);
+        if (op != Op.ADD && op != Op.MUL || !Op.validModes(push)) {
+            return false;
+        }
+        return Op.mode(push, 1) == 1 && program[pc - 3] == pc + 3 || Op.mode(push, 2) == 1 && program[pc - 2] == pc + 3;
+    }
+
+    /**
+     * The address an {@code ADD} of an immediate and 0 or a {@code MUL} of an immediate and 1 stores, if it is in the
+     * image; -1 otherwise.
+     */
+    private int storedConstant(final int pc) {
+        final long instr = program[pc];
+        final Op op = Op.of(instr % 100);
+        if (op != Op.ADD && op != Op.MUL || !Op.validModes(instr) || Op.mode(instr, 1) != 1 || Op.mode(instr, 2) != 1) {
+            return -1;
+        }
+        final long neutral = op == Op.ADD ? 0 : 1;
+        final long value = cell(pc + 1) == neutral ? cell(pc + 2) : cell(pc + 2) == neutral ? cell(pc + 1) : -1;
+        return value >= 0 && value < program.length ? (int) value : -1;
+    }
+
+    /**
+     * True for an unconditional jump followed by a return site.
+     */
+    private boolean isCall(final int pc, final Op op) {
+        return !mayFallThrough(pc, op) && pc + 3 < program.length && returnSite[pc + 3];
+    }
+
+    /**
+     * Value of a parameter that is known before running: an immediate or a position operand, as long as the cell
+     * the value comes from is in the image and still assumed constant. {@link #UNKNOWN} for anything else.
+     */
+    private long constant(final int pc, final int parameter) {
+        final long value = cell(pc + parameter);
+        switch (Op.mode(program[pc], parameter)) {
+            case 1:
+                return pc + parameter < program.length && !variable[pc + parameter] ? value : UNKNOWN;
+            case 0:
+                return value >= 0 && value < program.length && !variable[(int) value] ? program[(int) value] : UNKNOWN;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private boolean mayJump(final int pc, final Op op) {
+        final long condition = constant(pc, 1);
+        return condition == UNKNOWN || (op == Op.JIT) == (condition != 0);
+    }
+
+    private boolean mayFallThrough(final int pc, final Op op) {
+        final long condition = constant(pc, 1);
+        return condition == UNKNOWN || (op == Op.JIT) == (condition == 0);
+    }
+
+    private long cell(final int address) {
+        return address < program.length ? program[address] : 0;
+    }
+
+    private double percent(final int cells) {
+        return program.length == 0 ? 0 : 100.0 * cells / program.length;
+    }
+
+    /**
+     * True for instructions whose parameters decide where control goes or how the relative base moves.
+     */
+    private static boolean steers(final Op op) {
+        return op == Op.JIT || op == Op.JIF || op == Op.RBASE;
+    }
+
+    /**
+     * Index of the parameter an instruction writes to, or 0 if it does not write.
+     */
+    private static int writeParameter(final Op op) {
+        switch (op) {
+            case ADD:
+            case MUL:
+            case LT:
+            case EQ:
+                return 3;
+            case INPUT:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private static int count(final boolean[] flags) {
+        int count = 0;
+        for (final boolean flag : flags) {
+            if (flag) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Instructions from {@code start} up to {@code end}, exclusive, that run in sequence. Successors are the starts
+     * of the blocks control can continue at: a return lists every return site, a call through memory every
+     * procedure.
+     */
+    static class Block {
+        final int start;
+        final int end;
+        final int instructions;
+        final int[] successors;
+
+        Block(final int start, final int end, final int instructions, final List<Integer> successors) {
+            this.start = start;
+            this.end = end;
+            this.instructions = instructions;
+            this.successors = successors.stream().mapToInt(Integer::intValue).distinct().toArray();
+        }
+    }
+
+    /**
+     * A call from {@code pc} in procedure {@code caller}, made with the relative base {@code offset} above the
+     * caller's entry.
+     */
+    private static class Call {
+        private final int pc;
+        private final int caller;
+        private final int callee;
+        private final long offset;
+
+        private Call(final int pc, final int caller, final int callee, final long offset) {
+            this.pc = pc;
+            this.caller = caller;
+            this.callee = callee;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary container for Intcode programs, an alternative to the comma separated text that loads without parsing.
+ *
+ * The file is laid out as follows, with the header big-endian:
+ *
+ * <pre>
+ * int   magic "ICPB"        byte  version          byte  flags (1 = block table)
+ * int   cell count          long  content hash     int   block count
+ * varint cells...
+ * varint block table...
+ * </pre>
+ *
+ * Cells are zigzag encoded and then written as little-endian base-128 varints, so the small opcodes and addresses that
+ * make up most programs take one or two bytes instead of the eight of a raw {@code long} or the two to six of text. The
+ * content hash, see {@link #hash(long[])}, is checked on load. The optional block table
+ * carries the basic blocks of a {@link ProgramAnalysis}, each as its start relative to the previous block, its length,
+ * its instruction count and its successors relative to its start, so tools that need the blocks do not have to analyze
+ * the program again.
+ *
+ * Files are written to a temporary file that replaces the target once complete, and loaded by mapping them and
+ * decoding the cells in one pass.
+ */
+class ProgramFile {
+    private static final int MAGIC = 0x49435042;
+    private static final byte VERSION = 1;
+    private static final byte BLOCK_TABLE = 1;
+    private static final int HEADER = 4 + 1 + 1 + 4 + 8 + 4;
+
+    private final long[] cells;
+    private final long hash;
+    private final List<ProgramAnalysis.Block> blocks;
+
+    private ProgramFile(final long[] cells, final long hash, final List<ProgramAnalysis.Block> blocks) {
+        this.cells = cells;
+        this.hash = hash;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Writes {@code cells} to {@code file}, with the block table of {@code analysis} unless it is null.
+     */
+    static void write(final Path file, final long[] cells, final ProgramAnalysis analysis) throws IOException {
+        final List<ProgramAnalysis.Block> blocks = analysis == null ? List.of() : analysis.blocks();
+        long length = HEADER;
+        for (final long cell : cells) {
+            length += varintSize(zigzag(cell));
+        }
+        int previous = 0;
+        for (final ProgramAnalysis.Block block : blocks) {
+            length += varintSize(block.start - previous) + varintSize(block.end - block.start)
+                + varintSize(block.instructions) + varintSize(block.successors.length);
+            for (final int successor : block.successors) {
+                length += varintSize(zigzag(successor - block.start));
+            }
+            previous = block.start;
+        }
+
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+            temp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        )) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putInt(MAGIC);
+            buffer.put(VERSION);
+            buffer.put(analysis == null ? 0 : BLOCK_TABLE);
+            buffer.putInt(cells.length);
+            buffer.putLong(hash(cells));
+            buffer.putInt(blocks.size());
+            for (final long cell : cells) {
+                putVarint(buffer, zigzag(cell));
+            }
+            previous = 0;
+            for (final ProgramAnalysis.Block block : blocks) {
+                putVarint(buffer, block.start - previous);
+                putVarint(buffer, block.end - block.start);
+                putVarint(buffer, block.instructions);
+                putVarint(buffer, block.successors.length);
+                for (final int successor : block.successors) {
+                    putVarint(buffer, zigzag(successor - block.start));
+                }
+                previous = block.start;
+            }
+            buffer.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a file written by {@link #write(Path, long[], ProgramAnalysis)}. Fails if it is truncated or its cells do
+     * not match the content hash.
+     */
+    static ProgramFile read(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final byte flags = header(buffer, file);
+            final long[] cells = new long[buffer.getInt()];
+            final long hash = buffer.getLong();
+            final int blockCount = buffer.getInt();
+
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = unzigzag(getVarint(buffer));
+            }
+            if (hash(cells) != hash) {
+                throw new IOException("Intcode program does not match its content hash: " + file);
+            }
+
+            List<ProgramAnalysis.Block> blocks = null;
+            if ((flags & BLOCK_TABLE) != 0) {
+                blocks = new ArrayList<>(blockCount);
+                int start = 0;
+                for (int i = 0; i < blockCount; i++) {
+                    start += (int) getVarint(buffer);
+                    final int end = start + (int) getVarint(buffer);
+                    final int instructions = (int) getVarint(buffer);
+                    final List<Integer> successors = new ArrayList<>();
+                    for (int count = (int) getVarint(buffer); count > 0; count--) {
+                        successors.add(start + (int) unzigzag(getVarint(buffer)));
+                    }
+                    blocks.add(new ProgramAnalysis.Block(start, end, instructions, successors));
+                }
+                blocks = Collections.unmodifiableList(blocks);
+            }
+            return new ProgramFile(cells, hash, blocks);
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("Truncated Intcode program: " + file, e);
+        }
+    }
+
+    /**
+     * The cells of the program. Owned by this file; callers must not modify them.
+     */
+    long[] cells() {
+        return cells;
+    }
+
+    long hash() {
+        return hash;
+    }
+
+    /**
+     * The basic blocks stored with the program, or null if it was written without a block table.
+     */
+    List<ProgramAnalysis.Block> blocks() {
+        return blocks;
+    }
+
+    /**
+     * Content hash of a program: mixes in one whole cell per step, so checking it costs a fraction of decoding the
+     * cells, unlike the byte-wise hash of {@link Checkpoint#hash(long[])}.
+     */
+    static long hash(final long[] cells) {
+        long hash = cells.length;
+        for (final long cell : cells) {
+            hash = (hash ^ cell) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    private static byte header(final ByteBuffer buffer, final Path file) throws IOException {
+        if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a binary Intcode program: " + file);
+        }
+        final byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary Intcode program version " + version + ": " + file);
+        }
+        return buffer.get();
+    }
+
+    private static long zigzag(final long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(final long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static int varintSize(final long value) {
+        return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+
+    private static void putVarint(final ByteBuffer buffer, final long value) {
+        long rest = value;
+        while ((rest & ~0x7FL) != 0) {
+            buffer.put((byte) (rest | 0x80));
+            rest >>>= 7;
+        }
+        buffer.put((byte) rest);
+    }
+
+    private static long getVarint(final ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint at offset " + buffer.position());
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A parsed Intcode program, shared by every computer that runs it.
+ *
+ * Images are cached for the lifetime of the process, keyed by a 64-bit FNV-1a hash of the source text, so each program
+ * is parsed once no matter how many computers are started from it. A hit is confirmed by comparing the source, which
+ * for the string constants the days return is an identity check; on a hash collision the program is parsed without
+ * being cached. The cache is never evicted, which suits the handful of programs a process runs.
+ *
+ * An image never changes after it is parsed. {@link #boot()} gives a new computer a copy-on-write view of the image's
+ * memory, so starting a computer copies two page tables instead of the cells, and {@link #cells()} hands out a copy for
+ * callers that patch the program before running it.
+ *
+ * Binary programs loaded with {@link #load(Path)} are cached separately, keyed by their content hash. The file is still
+ * decoded on every load, and a hit is confirmed by comparing the cells, so a hash collision only costs the cache; a
+ * hit saves building the image's memory again. A program that ships a block table has its instructions decoded once,
+ * from the blocks, and every computer booted from it starts on that decode cache copy-on-write instead of decoding or
+ * analyzing the program itself.
+ */
+final class ProgramImage {
+    private static final Map<Long, ProgramImage> CACHE = new ConcurrentHashMap<>();
+    private static final Map<Long, ProgramImage> BINARY_CACHE = new ConcurrentHashMap<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private final String source;
+    private final long hash;
+    private final long[] cells;
+    private final Memory template;
+    private final List<ProgramAnalysis.Block> blocks;
+    private final DecodeCache decoded;
+
+    private ProgramImage(
+        final String source,
+        final long hash,
+        final long[] cells,
+        final List<ProgramAnalysis.Block> blocks
+    ) {
+        this.source = source;
+        this.hash = hash;
+        this.cells = cells;
+        this.template = new Memory(cells).fork();
+        this.blocks = blocks;
+        if (blocks != null) {
+            decoded = new DecodeCache(cells.length, true);
+            decoded.warm(template, blocks);
+        } else {
+            decoded = null;
+        }
+    }
+
+    /**
+     * Returns the image of {@code source}, parsing it only if it is not cached yet.
+     */
+    static ProgramImage of(final String source) {
+        final long hash = hash(source);
+        final ProgramImage cached = CACHE.get(hash);
+        if (cached != null && cached.source.equals(source)) {
+            HITS.increment();
+            return cached;
+        }
+
+        MISSES.increment();
+        final ProgramImage image = new ProgramImage(source, hash, ProgramParser.parse(source), null);
+        if (cached != null) {
+            return image;
+        }
+        final ProgramImage raced = CACHE.putIfAbsent(hash, image);
+        return raced != null && raced.source.equals(source) ? raced : image;
+    }
+
+    /**
+     * Returns the image of the binary program in {@code file}, or the cached image of a program with the same cells.
+     */
+    static ProgramImage load(final Path file) throws IOException {
+        final ProgramFile loaded = ProgramFile.read(file);
+        final ProgramImage cached = BINARY_CACHE.get(loaded.hash());
+        if (cached != null && Arrays.equals(cached.cells, loaded.cells())) {
+            HITS.increment();
+            return cached;
+        }
+
+        MISSES.increment();
+        final ProgramImage image = new ProgramImage(null, loaded.hash(), loaded.cells(), loaded.blocks());
+        if (cached != null) {
+            return image;
+        }
+        final ProgramImage raced = BINARY_CACHE.putIfAbsent(loaded.hash(), image);
+        return raced != null && Arrays.equals(raced.cells, image.cells) ? raced : image;
+    }
+
+    /**
+     * Starts a new computer on this program with fresh channels.
+     */
+    IntComp boot() {
+        return boot(new LongChannel(), new LongChannel());
+    }
+
+    IntComp boot(final LongChannel input, final LongChannel output) {
+        final IntComp comp = new IntComp(template.share(), input, output);
+        return decoded == null ? comp : comp.withDecodeCache(decoded.share(template));
+    }
+
+    /**
+     * Returns a copy of the program's cells that the caller may modify.
+     */
+    long[] cells() {
+        return cells.clone();
+    }
+
+    int size() {
+        return cells.length;
+    }
+
+    /**
+     * Hash of the source text, or the content hash of a binary program.
+     */
+    long hash() {
+        return hash;
+    }
+
+    /**
+     * The basic blocks shipped with a binary program, or null if there were none.
+     */
+    List<ProgramAnalysis.Block> blocks() {
+        return blocks;
+    }
+
+    static String report() {
+        return String.format(
+            "%d programs cached, %d binary, %d hits, %d misses",
+            CACHE.size(),
+            BINARY_CACHE.size(),
+            HITS.sum(),
+            MISSES.sum()
+        );
+    }
+
+    private static long hash(final String source) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) {
+            hash = (hash ^ source.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Parses Intcode programs, comma separated signed decimals, straight from bytes without building strings.
+ *
+ * The parser is a small state machine fed one character at a time: digits accumulate into the current cell, a comma
+ * ends it and whitespace, including newlines, is skipped around the cells. Cells go into a growable {@code long[]} that
+ * stays with the parser, so a parser that is reused for many programs allocates nothing but the trimmed result once its
+ * buffer is large enough. Channels are read through one fixed buffer and files are mapped, so the input is never
+ * copied as a whole.
+ *
+ * Malformed input, such as an empty cell, a stray character or a value outside the {@code long} range, fails with a
+ * {@link NumberFormatException} naming the offset, like {@link Long#parseLong(String)} would.
+ */
+class ProgramParser {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_CHUNK = 1L << 30;
+
+    private static final int BEFORE_CELL = 0;
+    private static final int AFTER_SIGN = 1;
+    private static final int IN_CELL = 2;
+    private static final int AFTER_CELL = 3;
+
+    private long[] cells = new long[1024];
+    private ByteBuffer buffer;
+    private int count;
+    private int state;
+    private long value;
+    private boolean negative;
+    private long offset;
+
+    static long[] parse(final CharSequence program) {
+        return new ProgramParser().parseChars(program);
+    }
+
+    static long[] parse(final Path file) throws IOException {
+        return new ProgramParser().parseFile(file);
+    }
+
+    static long[] parse(final ReadableByteChannel channel) throws IOException {
+        return new ProgramParser().parseChannel(channel);
+    }
+
+    long[] parseChars(final CharSequence program) {
+        reset();
+        for (int i = 0; i < program.length(); i++) {
+            accept(program.charAt(i));
+        }
+        return finish();
+    }
+
+    /**
+     * Parses a file by mapping it, in chunks of at most a gigabyte.
+     */
+    long[] parseFile(final Path file) throws IOException {
+        reset();
+        try (FileChannel channel = FileChannel.open(file)) {
+            final long size = channel.size();
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                final MappedByteBuffer mapped =
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position));
+                acceptAll(mapped);
+            }
+        }
+        return finish();
+    }
+
+    /**
+     * Parses everything {@code channel} yields until its end. The channel is not closed.
+     */
+    long[] parseChannel(final ReadableByteChannel channel) throws IOException {
+        reset();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        }
+        while (channel.read(buffer.clear()) >= 0) {
+            acceptAll(buffer.flip());
+        }
+        return finish();
+    }
+
+    private void acceptAll(final ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            accept(bytes.get());
+        }
+    }
+
+    private void reset() {
+        count = 0;
+        state = BEFORE_CELL;
+        value = 0;
+        negative = false;
+        offset = 0;
+    }
+
+    /**
+     * Cells are accumulated as negative numbers, whose range includes {@link Long#MIN_VALUE}, and negated at the end
+     * unless the cell had a minus sign.
+     */
+    private void accept(final int c) {
+        if (c >= '0' && c <= '9') {
+            if (state == AFTER_CELL) {
+                throw malformed("Missing comma");
+            }
+            final int digit = c - '0';
+            if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + digit) {
+                throw malformed("Value out of range");
+            }
+            value = value * 10 - digit;
+            state = IN_CELL;
+        } else if (c == ',') {
+            if (state == AFTER_SIGN) {
+                throw malformed("Sign without digits");
+            }
+            if (state == BEFORE_CELL) {
+                throw malformed("Empty cell");
+            }
+            store();
+            state = BEFORE_CELL;
+        } else if (c == '-' || c == '+') {
+            if (state != BEFORE_CELL) {
+                throw malformed("Unexpected sign");
+            }
+            negative = c == '-';
+            state = AFTER_SIGN;
+        } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            if (state == AFTER_SIGN) {
+                throw malformed("Sign without digits");
+            }
+            if (state == IN_CELL) {
+                state = AFTER_CELL;
+            }
+        } else {
+            throw malformed("Unexpected character '" + (char) c + "'");
+        }
+        offset++;
+    }
+
+    private void store() {
+        if (!negative && value == Long.MIN_VALUE) {
+            throw malformed("Value out of range");
+        }
+        if (count == cells.length) {
+            cells = Arrays.copyOf(cells, cells.length * 2);
+        }
+        cells[count++] = negative ? value : -value;
+        value = 0;
+        negative = false;
+    }
+
+    private long[] finish() {
+        if (state == IN_CELL || state == AFTER_CELL) {
+            store();
+        } else if (state == AFTER_SIGN) {
+            throw malformed("Sign without digits");
+        } else if (count > 0) {
+            throw malformed("Empty cell");
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    private NumberFormatException malformed(final String reason) {
+        return new NumberFormatException(reason + " at offset " + offset + " of Intcode program");
+    }
+}
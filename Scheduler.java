@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs many Intcode computers on a fixed pool of worker threads.
+ *
+ * Runnable computers wait in one FIFO run queue. A worker takes the computer at the head, runs it for at most one
+ * quantum of instructions and puts it back at the tail, so every runnable computer gets the same share of instructions
+ * in turn. A computer that halts for input is parked: it is in no queue and costs nothing until a value is offered to
+ * its input channel, which puts it back on the run queue. A computer that terminates, fails, or executes more than the
+ * per-computer instruction cap leaves the scheduler and completes its {@link Task#done()} future.
+ *
+ * Computers must use their input channel, not an {@link IoDevice}, to be woken; one with a device never parks. Each
+ * input channel must belong to a single scheduled computer, since a channel has only one listener, and that listener
+ * has to be in place before anyone offers to the channel from another thread: computers that feed each other are
+ * submitted together with {@link #submitAll(List)}.
+ */
+class Scheduler implements AutoCloseable {
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int SIGNALLED = 2;
+    private static final int PARKED = 3;
+    private static final int DONE = 4;
+
+    private final BlockingQueue<Task> runQueue = new LinkedBlockingQueue<>();
+    private final Thread[] workers;
+    private final long quantum;
+    private final long cap;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder slices = new LongAdder();
+    private final LongAdder instructions = new LongAdder();
+    private final LongAdder parks = new LongAdder();
+    private final LongAdder wakes = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder capped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final AtomicLong maxQueueLength = new AtomicLong();
+
+    /**
+     * Starts {@code workers} worker threads that run each computer for {@code quantum} instructions at a time and
+     * stop it after {@code cap} instructions in total.
+     */
+    Scheduler(final int workers, final long quantum, final long cap) {
+        if (workers < 1 || quantum < 1 || cap < 1) {
+            throw new IllegalArgumentException("Workers, quantum and cap must be positive");
+        }
+
+        this.quantum = quantum;
+        this.cap = cap;
+        this.workers = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Thread(this::work, "intcode-worker-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Hands {@code comp} to the scheduler. It must not be run by anyone else from now on.
+     */
+    Task submit(final IntComp comp) {
+        return submitAll(List.of(comp)).get(0);
+    }
+
+    /**
+     * Hands all of {@code comps} to the scheduler, only starting them once every one of them can be woken.
+     */
+    List<Task> submitAll(final List<IntComp> comps) {
+        final List<Task> tasks = new ArrayList<>();
+        for (final IntComp comp : comps) {
+            final Task task = new Task(comp);
+            comp.input.whenOffered(task::signal);
+            tasks.add(task);
+        }
+        submitted.add(tasks.size());
+        for (final Task task : tasks) {
+            enqueue(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Number of computers waiting for a worker right now.
+     */
+    int runQueueLength() {
+        return runQueue.size();
+    }
+
+    String report() {
+        final long sliceCount = slices.sum();
+        return String.format(
+            "%d submitted, %d completed, %d capped, %d failed; %d slices, %d instructions, %d parks, %d wakes; "
+                + "run queue max %d, mean wait %.3f ms",
+            submitted.sum(),
+            completed.sum(),
+            capped.sum(),
+            failed.sum(),
+            sliceCount,
+            instructions.sum(),
+            parks.sum(),
+            wakes.sum(),
+            maxQueueLength.get(),
+            sliceCount == 0 ? 0.0 : queueWaitNanos.sum() / 1_000_000.0 / sliceCount
+        );
+    }
+
+    /**
+     * Stops the workers. Computers still queued or parked are left as they are.
+     */
+    @Override
+    public void close() {
+        for (final Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void enqueue(final Task task) {
+        task.state.set(QUEUED);
+        task.queuedAt = System.nanoTime();
+        runQueue.add(task);
+        maxQueueLength.accumulateAndGet(runQueue.size(), Math::max);
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                runSlice(runQueue.take());
+            }
+        } catch (final InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void runSlice(final Task task) {
+        queueWaitNanos.add(System.nanoTime() - task.queuedAt);
+        task.state.set(RUNNING);
+
+        final IntComp comp = task.comp;
+        comp.wake();
+        final long executed;
+        try {
+            executed = comp.run(Math.min(quantum, cap - task.executed));
+        } catch (final RuntimeException e) {
+            failed.increment();
+            task.finish(e);
+            return;
+        }
+        task.executed += executed;
+        instructions.add(executed);
+        slices.increment();
+
+        if (comp.terminated || !comp.halted && !comp.hasMoreInstructions()) {
+            completed.increment();
+            task.finish(null);
+        } else if (comp.halted) {
+            if (task.state.compareAndSet(RUNNING, PARKED)) {
+                parks.increment();
+            } else {
+                enqueue(task);
+            }
+        } else if (task.executed >= cap) {
+            capped.increment();
+            task.finish(new IllegalStateException("Instruction cap of " + cap + " exceeded"));
+        } else {
+            enqueue(task);
+        }
+    }
+
+    /**
+     * A computer run by the scheduler.
+     */
+    class Task {
+        private final IntComp comp;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CompletableFuture<IntComp> done = new CompletableFuture<>();
+        private long queuedAt;
+        private long executed = 0;
+
+        private Task(final IntComp comp) {
+            this.comp = comp;
+        }
+
+        /**
+         * Completes with the computer once it terminates, or exceptionally if it failed or hit the instruction cap.
+         */
+        CompletableFuture<IntComp> done() {
+            return done;
+        }
+
+        /**
+         * Called whenever a value is offered to the input channel. Wakes the computer if it is parked, or makes sure
+         * it is not parked if it is running right now.
+         */
+        private void signal() {
+            while (true) {
+                final int current = state.get();
+                if (current == PARKED && state.compareAndSet(PARKED, QUEUED)) {
+                    wakes.increment();
+                    enqueue(this);
+                    return;
+                }
+                if (current == RUNNING && state.compareAndSet(RUNNING, SIGNALLED)) {
+                    return;
+                }
+                if (current != PARKED && current != RUNNING) {
+                    return;
+                }
+            }
+        }
+
+        private void finish(final RuntimeException failure) {
+            state.set(DONE);
+            if (failure == null) {
+                done.complete(comp);
+            } else {
+                done.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs computers in the interpreter first and promotes them to generated bytecode once a loop gets hot.
+ *
+ * While interpreting, every taken backward jump counts towards its target. When one target has been jumped back to
+ * {@code threshold} times the computer is compiled with the shared {@link BytecodeCompiler} and runs compiled from
+ * then on. Short-lived computers never reach the threshold and never pay for compilation. A computer that writes into
+ * its compiled code is deoptimized back to the interpreter and is not promoted again.
+ *
+ * Every promotion and deoptimization is recorded as a {@link Transition}; {@link #report()} sums them up.
+ */
+class TieredCompiler {
+    static final int DEFAULT_THRESHOLD = 1_000;
+
+    private final BytecodeCompiler compiler = new BytecodeCompiler();
+    private final int threshold;
+    private final List<Transition> transitions = new ArrayList<>();
+
+    TieredCompiler() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    TieredCompiler(final int threshold) {
+        this.threshold = threshold;
+    }
+
+    IntComp.Backend newBackend() {
+        return new Runner();
+    }
+
+    synchronized List<Transition> transitions() {
+        return new ArrayList<>(transitions);
+    }
+
+    /**
+     * One line per kind of transition with the number of computers and the time spent compiling.
+     */
+    synchronized String report() {
+        int promotions = 0;
+        int deoptimizations = 0;
+        long compileNanos = 0;
+        long maxCompileNanos = 0;
+        for (final Transition transition : transitions) {
+            if (transition.to == Tier.COMPILED) {
+                promotions++;
+                compileNanos += transition.compileNanos;
+                maxCompileNanos = Math.max(maxCompileNanos, transition.compileNanos);
+            } else {
+                deoptimizations++;
+            }
+        }
+
+        return String.format(
+            "promoted %d (compile total %.3f ms, max %.3f ms, %d classes), deoptimized %d",
+            promotions,
+            compileNanos / 1_000_000.0,
+            maxCompileNanos / 1_000_000.0,
+            compiler.compiledPrograms(),
+            deoptimizations
+        );
+    }
+
+    private synchronized void record(final Transition transition) {
+        transitions.add(transition);
+    }
+
+    enum Tier {
+        INTERPRETED,
+        COMPILED
+    }
+
+    /**
+     * A computer moving between tiers. {@code pc} is the hot loop target for a promotion and the address execution
+     * continued at for a deoptimization.
+     */
+    static class Transition {
+        final Tier from;
+        final Tier to;
+        final int pc;
+        final long instructions;
+        final long compileNanos;
+
+        Transition(final Tier from, final Tier to, final int pc, final long instructions, final long compileNanos) {
+            this.from = from;
+            this.to = to;
+            this.pc = pc;
+            this.instructions = instructions;
+            this.compileNanos = compileNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%s -> %s at pc %d after %d instructions%s",
+                from,
+                to,
+                pc,
+                instructions,
+                to == Tier.COMPILED ? String.format(" (compiled in %.3f ms)", compileNanos / 1_000_000.0) : ""
+            );
+        }
+    }
+
+    private class Runner implements IntComp.Backend {
+        private int[] backEdges = new int[0];
+        private int hotTarget = -1;
+        private BytecodeCompiler.Runner compiled;
+        private boolean deoptimized = false;
+        private long executed = 0;
+
+        @Override
+        public long run(final IntComp comp, final long maxInstructions) {
+            long done = 0;
+            while (done < maxInstructions && comp.hasMoreInstructions()) {
+                final long ran;
+                if (compiled != null && !deoptimized) {
+                    ran = compiled.run(comp, maxInstructions - done);
+                    if (compiled.isDeoptimized()) {
+                        deoptimized = true;
+                        record(new Transition(Tier.COMPILED, Tier.INTERPRETED, comp.pos, executed + ran, 0));
+                    }
+                } else {
+                    ran = comp.interpret(maxInstructions - done);
+                    if (hotTarget >= 0) {
+                        promote(comp, ran);
+                    }
+                }
+                done += ran;
+                executed += ran;
+            }
+            return done;
+        }
+
+        @Override
+        public boolean written(final long address) {
+            return compiled != null && compiled.written(address);
+        }
+
+        @Override
+        public boolean backEdge(final int target) {
+            if (compiled != null) {
+                return false;
+            }
+            if (target >= backEdges.length) {
+                backEdges = Arrays.copyOf(backEdges, Math.max(target + 1, backEdges.length * 2));
+            }
+            if (++backEdges[target] < threshold) {
+                return false;
+            }
+            hotTarget = target;
+            return true;
+        }
+
+        private void promote(final IntComp comp, final long ran) {
+            final long start = System.nanoTime();
+            compiled = compiler.compile(comp);
+            final long compileNanos = System.nanoTime() - start;
+            record(new Transition(Tier.INTERPRETED, Tier.COMPILED, hotTarget, executed + ran, compileNanos));
+            hotTarget = -1;
+            backEdges = null;
+        }
+    }
+}